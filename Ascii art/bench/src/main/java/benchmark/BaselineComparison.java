@@ -0,0 +1,242 @@
+package benchmark;
+
+import ascii_art.AsciiArtAlgorithm;
+import image.Image;
+import image_char_matching.CharConverter;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that padded renders match those of the original pipeline, which padded a copy of the image,
+ * divided it into copied sub-images, summed the luminance of every pixel in floating point and
+ * matched each brightness against every character in turn. That pipeline is reimplemented here as
+ * the reference. Every differing character is classified: a tie is a tile whose exact brightness lies
+ * exactly halfway between the two characters, where the reference's rounding error decided the match;
+ * any other difference is a regression.
+ * <p>
+ * Usage: {@code BaselineComparison [<image>...]}; without images, the synthetic benchmark images are
+ * compared. Every image is rendered at each power of two resolution up to 512 that fits it, with
+ * the digits and with all printable ASCII characters. Exits with status 1 if there is a regression.
+ */
+public final class BaselineComparison {
+
+    private static final int MAX_RESOLUTION = 512;
+    private static final String[] SYNTHETIC_SIZES = {"800x600", "1600x1200"};
+    private static final char[][] CHARSETS = {SyntheticImages.charset(10), SyntheticImages.charset(95)};
+    private static final int WHITE = 0xFFFFFF;
+    // The exact luminance weights of the reference, scaled to integers
+    private static final int[] LUMA_WEIGHTS = {2126, 7152, 722};
+    private static final long WHITE_LUMA = 255L * 10000;
+
+    private BaselineComparison() {
+    }
+
+    /**
+     * Compares the renders of the given images, or of the synthetic images.
+     *
+     * @param args The paths of the images to compare.
+     * @throws IOException If an image cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<BufferedImage> images = new ArrayList<>();
+        if (args.length == 0) {
+            for (String size : SYNTHETIC_SIZES) {
+                File file = File.createTempFile("baseline-" + size, ".png");
+                try {
+                    SyntheticImages.writePng(size, file);
+                    images.add(ImageIO.read(file));
+                } finally {
+                    file.delete();
+                }
+                names.add(size);
+            }
+        } else {
+            for (String path : args) {
+                BufferedImage image = ImageIO.read(new File(path));
+                if (image == null) {
+                    throw new IOException("No image reader for " + path);
+                }
+                names.add(path);
+                images.add(image);
+            }
+        }
+
+        long tiles = 0;
+        long ties = 0;
+        long regressions = 0;
+        for (int i = 0; i < images.size(); i++) {
+            BufferedImage source = images.get(i);
+            int[] pixels = paddedPixels(source);
+            int paddedWidth = padded(source.getWidth());
+            int paddedHeight = padded(source.getHeight());
+            for (char[] charset : CHARSETS) {
+                Reference reference = new Reference(charset);
+                for (int resolution = 2; resolution <= Math.min(MAX_RESOLUTION, source.getWidth())
+                        && resolution <= paddedHeight; resolution *= 2) {
+                    Image image = new Image(source);
+                    char[][] rendered = new AsciiArtAlgorithm(image, charset, resolution, "console").run();
+                    int tileWidth = paddedWidth / resolution;
+                    int tileHeight = paddedHeight / resolution;
+                    for (int row = 0; row < resolution; row++) {
+                        for (int col = 0; col < resolution; col++) {
+                            tiles++;
+                            char expected = reference.match(
+                                    reference.brightness(pixels, paddedWidth, row, col, tileWidth, tileHeight));
+                            char actual = rendered[row][col];
+                            if (expected == actual) {
+                                continue;
+                            }
+                            long sum = exactLumaSum(pixels, paddedWidth, row, col, tileWidth, tileHeight);
+                            boolean tie = reference.isTie(expected, actual, sum, (long) tileWidth * tileHeight);
+                            if (tie) {
+                                ties++;
+                            } else {
+                                regressions++;
+                            }
+                            System.out.printf("%s %s charset=%d res=%d tile=(%d,%d): expected '%c', got '%c'%n",
+                                    tie ? "tie" : "REGRESSION", names.get(i), charset.length, resolution,
+                                    row, col, expected, actual);
+                        }
+                    }
+                }
+            }
+        }
+        System.out.printf("%d tiles compared: %d ties, %d regressions%n", tiles, ties, regressions);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    // The pixels of the image padded with white to powers of two and centered, as the reference padded it
+    private static int[] paddedPixels(BufferedImage source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int paddedWidth = padded(width);
+        int paddedHeight = padded(height);
+        int xPadding = (paddedWidth - width) / 2;
+        int yPadding = (paddedHeight - height) / 2;
+        int[] pixels = new int[paddedWidth * paddedHeight];
+        Arrays.fill(pixels, WHITE);
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                pixels[(i + yPadding) * paddedWidth + j + xPadding] = source.getRGB(j, i) & WHITE;
+            }
+        }
+        return pixels;
+    }
+
+    private static int padded(int dimension) {
+        int powerOfTwo = 1;
+        while (powerOfTwo < dimension) {
+            powerOfTwo *= 2;
+        }
+        return powerOfTwo;
+    }
+
+    // The luminance sum of a tile in integers, scaled by 10000, which no rounding can perturb
+    private static long exactLumaSum(int[] pixels, int stride, int row, int col, int tileWidth, int tileHeight) {
+        long sum = 0;
+        for (int i = row * tileHeight; i < (row + 1) * tileHeight; i++) {
+            for (int j = col * tileWidth; j < (col + 1) * tileWidth; j++) {
+                int rgb = pixels[i * stride + j];
+                sum += (long) ((rgb >> 16) & 0xFF) * LUMA_WEIGHTS[0] + ((rgb >> 8) & 0xFF) * LUMA_WEIGHTS[1]
+                        + (rgb & 0xFF) * LUMA_WEIGHTS[2];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * The brightness calculation and character matching of the original pipeline.
+     */
+    private static final class Reference {
+        private final char[] charset;
+        private final int[] pixelCounts;
+        private final int minCount;
+        private final int maxCount;
+
+        Reference(char[] charset) {
+            this.charset = charset;
+            this.pixelCounts = new int[charset.length];
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int k = 0; k < charset.length; k++) {
+                int count = 0;
+                for (boolean[] glyphRow : CharConverter.convertToBoolArray(charset[k])) {
+                    for (boolean set : glyphRow) {
+                        count += set ? 1 : 0;
+                    }
+                }
+                pixelCounts[k] = count;
+                min = Math.min(min, count);
+                max = Math.max(max, count);
+            }
+            this.minCount = min;
+            this.maxCount = max;
+        }
+
+        // The mean brightness of a tile, summed pixel by pixel in floating point, row by row
+        double brightness(int[] pixels, int stride, int row, int col, int tileWidth, int tileHeight) {
+            double total = 0;
+            for (int i = row * tileHeight; i < (row + 1) * tileHeight; i++) {
+                for (int j = col * tileWidth; j < (col + 1) * tileWidth; j++) {
+                    int rgb = pixels[i * stride + j];
+                    total += ((rgb >> 16) & 0xFF) * 0.2126 + ((rgb >> 8) & 0xFF) * 0.7152 + (rgb & 0xFF) * 0.0722;
+                }
+            }
+            return total / (tileWidth * tileHeight) / 255;
+        }
+
+        // The closest character, the lowest of equally close ones
+        char match(double brightness) {
+            char closest = 0;
+            double minDiff = Double.MAX_VALUE;
+            for (int k = 0; k < charset.length; k++) {
+                double diff = Math.abs(normalized(pixelCounts[k]) - brightness);
+                if (diff < minDiff || (diff == minDiff && charset[k] < closest)) {
+                    minDiff = diff;
+                    closest = charset[k];
+                }
+            }
+            return closest;
+        }
+
+        // Whether the exact brightness sum / (area * WHITE_LUMA) lies halfway between two characters
+        boolean isTie(char first, char second, long sum, long area) {
+            if (maxCount == minCount) {
+                return true;
+            }
+            long firstCount = countOf(first) - minCount;
+            long secondCount = countOf(second) - minCount;
+            // sum / (area * WHITE_LUMA) == (firstCount + secondCount) / (2 * (maxCount - minCount))
+            BigInteger left = BigInteger.valueOf(sum).multiply(BigInteger.valueOf(2L * (maxCount - minCount)));
+            BigInteger right = BigInteger.valueOf(firstCount + secondCount)
+                    .multiply(BigInteger.valueOf(area)).multiply(BigInteger.valueOf(WHITE_LUMA));
+            return left.equals(right);
+        }
+
+        private double normalized(int count) {
+            if (maxCount == minCount) {
+                return 1.0;
+            }
+            return (double) (count - minCount) / (maxCount - minCount);
+        }
+
+        private int countOf(char c) {
+            for (int k = 0; k < charset.length; k++) {
+                if (charset[k] == c) {
+                    return pixelCounts[k];
+                }
+            }
+            throw new IllegalArgumentException("Not in the charset: " + c);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package benchmark;
+
+import image.Image;
+import image.ImageUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the stages that depend only on the image: loading it from a PNG file and padding it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageBenchmarks {
+
+    @Param({"800x600", "1600x1200", "3000x2000"})
+    public String size;
+
+    private final ImageUtils utils = new ImageUtils();
+    private File file;
+    private Image image;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("bench-" + size, ".png");
+        SyntheticImages.writePng(size, file);
+        image = SyntheticImages.image(size);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public Image load() throws IOException {
+        return new Image(file.getPath());
+    }
+
+    @Benchmark
+    public Image padImage() {
+        return utils.padImage(image);
+    }
+}
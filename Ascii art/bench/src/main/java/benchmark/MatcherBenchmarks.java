@@ -0,0 +1,56 @@
+package benchmark;
+
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of matching brightness values to characters, over a fixed sample of random brightnesses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatcherBenchmarks {
+
+    private static final int BRIGHTNESS_SAMPLES = 4096;
+    private static final long SEED = 42;
+
+    @Param({"10", "95"})
+    public int charsetSize;
+
+    private SubImgCharMatcher matcher;
+    private double[] brightnesses;
+
+    @Setup
+    public void setUp() {
+        matcher = new SubImgCharMatcher(SyntheticImages.charset(charsetSize));
+        brightnesses = new double[BRIGHTNESS_SAMPLES];
+        Random random = new Random(SEED);
+        for (int i = 0; i < brightnesses.length; i++) {
+            brightnesses[i] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public void getCharByImageBrightness(Blackhole blackhole) {
+        for (double brightness : brightnesses) {
+            blackhole.consume(matcher.getCharByImageBrightness(brightness));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package benchmark;
+
+import ascii_art.AsciiArtAlgorithm;
+import image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the whole run of {@link AsciiArtAlgorithm}. Every invocation renders a fresh view of
+ * the image's pixels, so its integral image is built as on first use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmarks {
+
+    @Param({"800x600", "1600x1200", "3000x2000"})
+    public String size;
+
+    @Param({"16", "64", "256", "1024"})
+    public int resolution;
+
+    @Param({"10", "95"})
+    public int charsetSize;
+
+    private Image source;
+    private char[] charset;
+
+    @Setup
+    public void setUp() {
+        source = SyntheticImages.image(size);
+        charset = SyntheticImages.charset(charsetSize);
+    }
+
+    @Benchmark
+    public char[][] run() {
+        Image image = source.getSubImage(0, 0, source.getHeight(), source.getWidth());
+        return new AsciiArtAlgorithm(image, charset, resolution, "console").run();
+    }
+}
@@ -0,0 +1,91 @@
+package benchmark;
+
+import image.Image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The inputs shared by the pipeline benchmarks: deterministic synthetic images and character sets,
+ * so results are comparable between runs. Sizes are given as "widthxheight", and are at least 513
+ * pixels in both dimensions, so they pad to 1024 or more and every resolution up to 1024 applies.
+ */
+final class SyntheticImages {
+
+    private static final long SEED = 42;
+
+    private SyntheticImages() {
+    }
+
+    /**
+     * Creates the synthetic image of a size.
+     *
+     * @param size The size of the image, such as "800x600".
+     * @return The image.
+     */
+    static Image image(String size) {
+        int[] dimensions = dimensions(size);
+        return new Image(pixels(dimensions[0], dimensions[1]), dimensions[0], dimensions[1]);
+    }
+
+    /**
+     * Writes the synthetic image of a size to a PNG file.
+     *
+     * @param size The size of the image, such as "800x600".
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    static void writePng(String size, File file) throws IOException {
+        int[] dimensions = dimensions(size);
+        int width = dimensions[0];
+        int height = dimensions[1];
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, pixels(width, height), 0, width);
+        ImageIO.write(image, "png", file);
+    }
+
+    /**
+     * Returns the first printable ASCII characters, starting from the digits for a set of 10.
+     *
+     * @param charsetSize The number of characters, at most 95.
+     * @return The characters.
+     */
+    static char[] charset(int charsetSize) {
+        char first = charsetSize <= 10 ? '0' : ' ';
+        char[] charset = new char[charsetSize];
+        for (int i = 0; i < charsetSize; i++) {
+            charset[i] = (char) (first + i);
+        }
+        return charset;
+    }
+
+    private static int[] dimensions(String size) {
+        String[] parts = size.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    // A smooth gradient with circles and seeded noise, so tiles differ in brightness and detail.
+    private static int[] pixels(int width, int height) {
+        Random random = new Random(SEED + (long) width * height);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double dx = x - width / 2.0;
+                double dy = y - height / 2.0;
+                int ring = (int) (Math.sqrt(dx * dx + dy * dy) / 20) % 2 * 60;
+                int red = clamp(x * 255 / width + ring + random.nextInt(16));
+                int green = clamp(y * 255 / height + random.nextInt(16));
+                int blue = clamp(255 - red / 2 - ring + random.nextInt(16));
+                pixels[y * width + x] = 0xFF000000 | red << 16 | green << 8 | blue;
+            }
+        }
+        return pixels;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
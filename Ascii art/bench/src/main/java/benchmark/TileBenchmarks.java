@@ -0,0 +1,60 @@
+package benchmark;
+
+import image.Image;
+import image.ImageUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the stages that work on the tiles of a padded image: dividing it into sub-images and
+ * calculating the brightness of every sub-image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileBenchmarks {
+
+    @Param({"800x600", "1600x1200", "3000x2000"})
+    public String size;
+
+    @Param({"16", "64", "256", "1024"})
+    public int resolution;
+
+    private final ImageUtils utils = new ImageUtils();
+    private Image padded;
+    private List<Image> tiles;
+
+    @Setup
+    public void setUp() {
+        padded = utils.padImage(SyntheticImages.image(size));
+        tiles = utils.divideToSubImages(resolution, padded);
+    }
+
+    @Benchmark
+    public List<Image> divideToSubImages() {
+        return utils.divideToSubImages(resolution, padded);
+    }
+
+    @Benchmark
+    public void calculateBrightness(Blackhole blackhole) {
+        for (Image tile : tiles) {
+            blackhole.consume(utils.calculateBrightness(tile));
+        }
+    }
+}
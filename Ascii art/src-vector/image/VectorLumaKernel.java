@@ -0,0 +1,42 @@
+package image;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Computes fixed point luminance a full SIMD register of pixels at a time, using the incubating
+ * Vector API. It is kept out of {@code src} so the default build does not need the incubating module:
+ * compile it against the classes of {@code src} with {@code --add-modules jdk.incubator.vector}, and
+ * run with the same flag. {@link LumaKernel} falls back to {@link ScalarLumaKernel} when it cannot
+ * be loaded.
+ * The channels are unpacked with shifts and masks and weighted in int lanes, which cannot overflow
+ * since the luminance of a white pixel is well below the int range.
+ */
+class VectorLumaKernel implements LumaKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    VectorLumaKernel() {
+        // touch the species, so a missing module fails here rather than on first use
+        SPECIES.length();
+    }
+
+    @Override
+    public void fixedLuma(int[] pixels, int from, int[] luma, int length) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+            IntVector rgb = IntVector.fromArray(SPECIES, pixels, from + i);
+            IntVector red = rgb.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+            IntVector green = rgb.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+            IntVector blue = rgb.and(0xFF);
+            red.mul(IntegralImage.RED_LUMA_WEIGHT)
+                    .add(green.mul(IntegralImage.GREEN_LUMA_WEIGHT))
+                    .add(blue.mul(IntegralImage.BLUE_LUMA_WEIGHT))
+                    .intoArray(luma, i);
+        }
+        for (; i < length; i++) {
+            luma[i] = IntegralImage.fixedLuma(pixels[from + i]);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package ascii_art;
+
+import ascii_art.AsciiArtAlgorithm.TilingMode;
+import ascii_output.AnimationOutput;
+import ascii_output.ConsoleAnimationOutput;
+import ascii_output.DeltaFileAnimationOutput;
+import ascii_output.HtmlAnimationOutput;
+import image.Image;
+import image_char_matching.CharConverter;
+import image_char_matching.SubImgCharMatcher;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Converts a sequence of frames into an ASCII animation. The frames are the images of the given files
+ * in order, where an animated GIF contributes all of its frames, composited as a viewer would show them.
+ * Frames are decoded on a background thread, a few frames ahead of rendering, so decoding overlaps
+ * rendering. One matcher is used for every frame, and glyphs come from the process-wide cache.
+ */
+public class AsciiAnimation {
+
+    private static final int DEFAULT_FRAME_DELAY_MILLIS = 1000 / 30;
+    private static final int DECODED_FRAMES_AHEAD = 4;
+    private static final String GIF_FORMAT = "gif";
+    private static final String GIF_IMAGE_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String GIF_STREAM_METADATA_FORMAT = "javax_imageio_gif_stream_1.0";
+    // Viewers show GIF frames with a delay of 0 or 1 hundredths for this long instead
+    private static final int GIF_MIN_DELAY_HUNDREDTHS = 2;
+    private static final int GIF_DEFAULT_DELAY_MILLIS = 100;
+    private static final String DELTA_FILE_EXTENSION = ".delta";
+    private static final Frame END_OF_FRAMES = new Frame(null, 0, null);
+
+    private final List<String> sources;
+    private final char[] charset;
+    private final int resolution;
+    private final int parallelism;
+
+    /**
+     * Constructs an AsciiAnimation.
+     *
+     * @param sources     The image files to take the frames from, in order.
+     * @param charset     The set of characters to use for creating ASCII art.
+     * @param resolution  The number of characters in each row of every frame. A resolution that is not
+     *                    a power of two is rendered with adaptive tiling.
+     * @param parallelism The number of threads to render each frame with.
+     */
+    public AsciiAnimation(List<String> sources, char[] charset, int resolution, int parallelism) {
+        this.sources = sources;
+        this.charset = charset;
+        this.resolution = resolution;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Renders every frame and hands it to the output as soon as it is ready.
+     *
+     * @param output The output to write the animation to.
+     * @throws IOException If a frame cannot be decoded or does not fit the resolution.
+     */
+    public void run(AnimationOutput output) throws IOException {
+        SubImgCharMatcher matcher = new SubImgCharMatcher(charset);
+        BlockingQueue<Frame> frames = new ArrayBlockingQueue<>(DECODED_FRAMES_AHEAD);
+        Thread decoder = new Thread(() -> decodeFrames(frames), "ascii-animation-decoder");
+        decoder.setDaemon(true);
+        decoder.start();
+        boolean begun = false;
+        try {
+            for (Frame frame = frames.take(); frame != END_OF_FRAMES; frame = frames.take()) {
+                if (frame.error != null) {
+                    throw frame.error;
+                }
+                if (resolution < 1 || resolution > frame.image.getWidth()) {
+                    throw new IOException("Resolution " + resolution + " exceeds the frame boundaries.");
+                }
+                // padded tiles would crop the frame at a resolution that is not a power of two
+                AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(frame.image, charset, resolution,
+                        null, parallelism, TilingMode.forResolution(resolution));
+                char[][] asciiArt = algorithm.matchCharacters(algorithm.calculateBrightnesses(), matcher);
+                if (!begun) {
+                    output.begin(asciiArt.length, resolution);
+                    begun = true;
+                }
+                output.frame(asciiArt, frame.delayMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for frames.");
+        } finally {
+            decoder.interrupt();
+            if (begun) {
+                output.end();
+            }
+        }
+    }
+
+    // Decodes every frame of every source into the queue, ending with END_OF_FRAMES or an error.
+    private void decodeFrames(BlockingQueue<Frame> frames) {
+        try {
+            try {
+                for (String source : sources) {
+                    decodeSource(source, frames);
+                }
+                frames.put(END_OF_FRAMES);
+            } catch (IOException | RuntimeException e) {
+                IOException error = e instanceof IOException ? (IOException) e
+                        : new IOException("Failed to decode frames: " + e.getMessage(), e);
+                frames.put(new Frame(null, 0, error));
+            }
+        } catch (InterruptedException e) {
+            // rendering stopped, nobody is waiting for more frames
+        }
+    }
+
+    private void decodeSource(String source, BlockingQueue<Frame> frames)
+            throws IOException, InterruptedException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(source))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("No image reader for " + source);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                if (GIF_FORMAT.equalsIgnoreCase(reader.getFormatName())) {
+                    decodeGif(reader, frames);
+                } else {
+                    for (int i = 0; hasImage(reader, i); i++) {
+                        frames.put(new Frame(new Image(reader.read(i)), DEFAULT_FRAME_DELAY_MILLIS, null));
+                    }
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Composites the frames of a GIF onto a white canvas the size of its logical screen.
+    private void decodeGif(ImageReader reader, BlockingQueue<Frame> frames)
+            throws IOException, InterruptedException {
+        BufferedImage canvas = null;
+        Graphics2D graphics = null;
+        BufferedImage previous = null;
+        String disposal = "none";
+        Rectangle disposalArea = null;
+        try {
+            for (int i = 0; hasImage(reader, i); i++) {
+                BufferedImage frameImage = reader.read(i);
+                IIOMetadataNode metadata = (IIOMetadataNode) reader.getImageMetadata(i)
+                        .getAsTree(GIF_IMAGE_METADATA_FORMAT);
+                if (canvas == null) {
+                    Dimension screen = logicalScreenSize(reader.getStreamMetadata(), frameImage);
+                    canvas = new BufferedImage(screen.width, screen.height, BufferedImage.TYPE_INT_RGB);
+                    graphics = canvas.createGraphics();
+                    graphics.setBackground(Color.WHITE);
+                    graphics.clearRect(0, 0, screen.width, screen.height);
+                }
+                // Undo the previous frame as its disposal method asks
+                if ("restoreToBackgroundColor".equals(disposal)) {
+                    graphics.clearRect(disposalArea.x, disposalArea.y, disposalArea.width, disposalArea.height);
+                } else if ("restoreToPrevious".equals(disposal) && previous != null) {
+                    graphics.drawImage(previous, 0, 0, null);
+                }
+                IIOMetadataNode descriptor = childNode(metadata, "ImageDescriptor");
+                IIOMetadataNode control = childNode(metadata, "GraphicControlExtension");
+                disposal = control == null ? "none" : control.getAttribute("disposalMethod");
+                disposalArea = new Rectangle(intAttribute(descriptor, "imageLeftPosition"),
+                        intAttribute(descriptor, "imageTopPosition"),
+                        frameImage.getWidth(), frameImage.getHeight());
+                if ("restoreToPrevious".equals(disposal)) {
+                    previous = copy(canvas);
+                }
+                graphics.drawImage(frameImage, disposalArea.x, disposalArea.y, null);
+
+                int delayHundredths = control == null ? 0 : intAttribute(control, "delayTime");
+                int delayMillis = delayHundredths < GIF_MIN_DELAY_HUNDREDTHS
+                        ? GIF_DEFAULT_DELAY_MILLIS : delayHundredths * 10;
+                frames.put(new Frame(new Image(canvas), delayMillis, null));
+            }
+        } finally {
+            if (graphics != null) {
+                graphics.dispose();
+            }
+        }
+    }
+
+    private static Dimension logicalScreenSize(IIOMetadata streamMetadata, BufferedImage firstFrame) {
+        if (streamMetadata != null) {
+            IIOMetadataNode screen = childNode(
+                    (IIOMetadataNode) streamMetadata.getAsTree(GIF_STREAM_METADATA_FORMAT),
+                    "LogicalScreenDescriptor");
+            if (screen != null) {
+                int width = intAttribute(screen, "logicalScreenWidth");
+                int height = intAttribute(screen, "logicalScreenHeight");
+                if (width > 0 && height > 0) {
+                    return new Dimension(width, height);
+                }
+            }
+        }
+        return new Dimension(firstFrame.getWidth(), firstFrame.getHeight());
+    }
+
+    private static boolean hasImage(ImageReader reader, int index) throws IOException {
+        try {
+            reader.getWidth(index);
+            return true;
+        } catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    private static IIOMetadataNode childNode(IIOMetadataNode parent, String name) {
+        for (int i = 0; i < parent.getLength(); i++) {
+            if (name.equals(parent.item(i).getNodeName())) {
+                return (IIOMetadataNode) parent.item(i);
+            }
+        }
+        return null;
+    }
+
+    private static int intAttribute(IIOMetadataNode node, String name) {
+        String value = node == null ? "" : node.getAttribute(name);
+        return value.isEmpty() ? 0 : Integer.parseInt(value);
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        copy.setData(image.getRaster());
+        return copy;
+    }
+
+    // A decoded frame and how long to show it, or the error that stopped decoding.
+    private static final class Frame {
+        private final Image image;
+        private final int delayMillis;
+        private final IOException error;
+
+        private Frame(Image image, int delayMillis, IOException error) {
+            this.image = image;
+            this.delayMillis = delayMillis;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The entry point of animation conversion.
+     *
+     * @param args The output, either "console", the path of a patch file ending with ".delta"
+     *             or the path of an HTML file, the resolution,
+     *             the charset as in the batch manifest, and then the frame files or animated GIFs.
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Usage: AsciiAnimation <console|file.html> <resolution> <charset> <frames>...");
+            return;
+        }
+        try {
+            AsciiAnimation animation = new AsciiAnimation(Arrays.asList(args).subList(3, args.length),
+                    BatchRunner.parseCharset(args[2]), Integer.parseInt(args[1]),
+                    Runtime.getRuntime().availableProcessors());
+            if ("console".equals(args[0])) {
+                animation.run(new ConsoleAnimationOutput(System.out, true));
+            } else if (args[0].endsWith(DELTA_FILE_EXTENSION)) {
+                DeltaFileAnimationOutput output = new DeltaFileAnimationOutput(args[0]);
+                animation.run(output);
+                output.checkError();
+            } else {
+                HtmlAnimationOutput output = new HtmlAnimationOutput(args[0], "Courier New");
+                animation.run(output);
+                output.checkError();
+            }
+            CharConverter.saveGlyphMetrics();
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+}
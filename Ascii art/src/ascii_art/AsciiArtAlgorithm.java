@@ -2,23 +2,75 @@ package ascii_art;
 
 import image.Image;
 import image.ImageUtils; // Make sure this import matches your actual package structure
+import image_char_matching.CharConverter;
 import image_char_matching.SubImgCharMatcher; // Adjust this import based on your package structure
+import ascii_output.StreamingAsciiOutput;
+import ascii_art.RenderMetrics.Stage;
+import ascii_art.RenderMetrics.Timer;
 
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * This class represents the core algorithm for generating ASCII art from an image.
  * It utilizes the Image, ImageUtils, and SubImgCharMatcher classes to convert an image into ASCII art by
  * adjusting the image resolution, padding the image, dividing it into sub-images, and matching each sub-image
- * with an appropriate character based on its brightness.
+ * with an appropriate character based on its brightness. Sub-image brightness is read from the integral image
+ * of the source, so re-rendering the same image at another resolution does not rescan its pixels.
+ * Rows of tiles are independent, so they may be processed in parallel, on pools of workers shared by
+ * every render; small grids are processed on the calling thread. The result is the same either way.
+ * The time and allocation of every stage are recorded in {@link RenderMetrics} when it is enabled.
+ * With adaptive tiling, the image is divided as is into a grid of any width, instead of being padded
+ * to powers of two first.
  */
 public class AsciiArtAlgorithm {
 
+    /**
+     * How the image is divided into tiles.
+     */
+    public enum TilingMode {
+        /**
+         * The image is padded with white to powers of two, and divided into resolution x resolution
+         * tiles of whole pixels.
+         */
+        PADDED,
+        /**
+         * The image is divided without padding into resolution columns and as many rows as keep the
+         * tiles square, with fractional tile bounds and area weighted sampling.
+         */
+        ADAPTIVE;
+
+        /**
+         * Returns the tiling every entry point uses for a resolution it was given: padded tiles
+         * only cover the whole image when the resolution is a power of two, so any other
+         * resolution is tiled adaptively.
+         *
+         * @param resolution The number of characters in each row of the ASCII art.
+         * @return PADDED for powers of two, ADAPTIVE otherwise.
+         */
+        public static TilingMode forResolution(int resolution) {
+            return Integer.bitCount(resolution) == 1 ? PADDED : ADAPTIVE;
+        }
+    }
+
+    // The smallest brightness difference within a tile for it to be matched by shape
+    private static final double MIN_SHAPE_CONTRAST = 0.1;
+    // Below this many rows of tiles, handing rows to workers costs more than it saves
+    private static final int MIN_PARALLEL_ROWS = 64;
+    // Pools of workers by parallelism, shared by every render so none pays for starting threads
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
     private Image image;
     private char[] charset;
     private int resolution;
 
     private String output;
+    private int parallelism;
+    private TilingMode tiling;
+    private int rows;
 
     /**
      * Constructs an AsciiArtAlgorithm with specified image, character set, resolution, and output type.
@@ -29,10 +81,45 @@ public class AsciiArtAlgorithm {
      * @param output    The desired output format (e.g., console, file).
      */
     public AsciiArtAlgorithm(Image image, char[] charset, int resolution, String output){
+        this(image, charset, resolution, output, 1);
+    }
+
+    /**
+     * Constructs an AsciiArtAlgorithm that processes rows of tiles on several threads.
+     *
+     * @param image       The source image to convert into ASCII art.
+     * @param charset     The set of characters to use for creating ASCII art.
+     * @param resolution  The resolution of the ASCII art in terms of character density.
+     * @param output      The desired output format (e.g., console, file).
+     * @param parallelism The number of threads to use. 1 runs sequentially on the calling thread.
+     */
+    public AsciiArtAlgorithm(Image image, char[] charset, int resolution, String output, int parallelism){
+        this(image, charset, resolution, output, parallelism, TilingMode.PADDED);
+    }
+
+    /**
+     * Constructs an AsciiArtAlgorithm with a given way of dividing the image into tiles.
+     *
+     * @param image       The source image to convert into ASCII art.
+     * @param charset     The set of characters to use for creating ASCII art.
+     * @param resolution  The number of characters in each row of the ASCII art.
+     * @param output      The desired output format (e.g., console, file).
+     * @param parallelism The number of threads to use. 1 runs sequentially on the calling thread.
+     * @param tiling      How the image is divided into tiles.
+     */
+    public AsciiArtAlgorithm(Image image, char[] charset, int resolution, String output, int parallelism,
+                             TilingMode tiling){
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
         this.image = image;
         this.charset = charset;
         this.resolution = resolution;
         this.output = output;
+        this.parallelism = parallelism;
+        this.tiling = tiling;
+        this.rows = tiling == TilingMode.ADAPTIVE ? new ImageUtils().calculateAdaptiveRows(resolution, image)
+                : resolution;
     }
 
     /**
@@ -41,31 +128,205 @@ public class AsciiArtAlgorithm {
      * @return A 2D character array representing the ASCII art.
      */
     public char[][] run() {
+        return matchCharacters(calculateBrightnesses(), new SubImgCharMatcher(charset));
+    }
+
+    /**
+     * Executes the ASCII art generation algorithm, pushing each row of the ASCII art to the output
+     * as soon as it is finished, so the whole 2D array never has to exist at once. When running on
+     * several threads, rows are produced in batches of one row per thread and pushed in order.
+     *
+     * @param output The output to push the rows to.
+     */
+    public void run(StreamingAsciiOutput output) {
+        run(output, new SubImgCharMatcher(charset));
+    }
+
+    /**
+     * Executes the ASCII art generation algorithm like {@link #run(StreamingAsciiOutput)}, matching
+     * tiles with a given matcher instead of one built for the charset. The matcher is only read,
+     * so it may be shared between algorithms running concurrently.
+     *
+     * @param output  The output to push the rows to.
+     * @param matcher The matcher holding the character set to use.
+     */
+    public void run(StreamingAsciiOutput output, SubImgCharMatcher matcher) {
+        ImageUtils utils = new ImageUtils();
+        buildIntegralImage(false);
+
+        ForkJoinPool pool = pool();
+        RenderMetrics metrics = RenderMetrics.getInstance();
+        Timer brightnessTimer = metrics.start(Stage.BRIGHTNESS);
+        brightnessTimer.pause();
+        Timer matchingTimer = metrics.start(Stage.MATCHING);
+        matchingTimer.pause();
+        output.begin(rows, resolution);
+        try {
+            char[][] batch = new char[parallelism][resolution];
+            double[][] brightnesses = new double[parallelism][resolution];
+            for (int first = 0; first < rows; first += parallelism) {
+                int batchStart = first;
+                int batchSize = Math.min(parallelism, rows - first);
+                brightnessTimer.resume();
+                forEachIndex(pool, batchSize, brightnessTimer.track(i ->
+                        calculateBrightnessRow(utils, batchStart + i, brightnesses[i])));
+                brightnessTimer.pause();
+                matchingTimer.resume();
+                forEachIndex(pool, batchSize, matchingTimer.track(i -> {
+                    for (int col = 0; col < resolution; col++) {
+                        batch[i][col] = matcher.getCharByImageBrightness(brightnesses[i][col]);
+                    }
+                }));
+                matchingTimer.pause();
+                for (int i = 0; i < batchSize; i++) {
+                    output.row(batch[i]);
+                }
+            }
+            brightnessTimer.stop();
+            matchingTimer.stop();
+        } finally {
+            output.end();
+        }
+    }
+
+    /**
+     * Calculates the brightness of every tile of the image, the first stage of {@link #run()}.
+     *
+     * @return A grid of normalized brightness values, with resolution columns.
+     */
+    public double[][] calculateBrightnesses() {
         ImageUtils utils = new ImageUtils();
-        SubImgCharMatcher matcher = new SubImgCharMatcher(charset);
 
-        // pad the image
-        Image paddedImage = utils.padImage(image);
+        // build the integral image up front, so worker threads only read it
+        buildIntegralImage(false);
 
-        // divide the padded image into sub-images based on the specified resolution
-        List<Image> subImages = utils.divideToSubImages(resolution, paddedImage);
-        int subImagesPerRow = paddedImage.getWidth() / (paddedImage.getWidth() / resolution);
+        double[][] brightnesses = new double[rows][resolution];
+        forEachRow(Stage.BRIGHTNESS, row -> calculateBrightnessRow(utils, row, brightnesses[row]));
+        return brightnesses;
+    }
 
-        // Initialize the ASCII art matrix
-        char[][] asciiArt = new char[subImages.size() / subImagesPerRow][subImagesPerRow];
+    /**
+     * Calculates the mean color of every tile of the image, for colored output.
+     * The colors come from the color tables of the image's integral image, which are built in the
+     * same pass as its luminance table when they are first needed.
+     *
+     * @return A grid of packed RGB colors, laid out like {@link #calculateBrightnesses()}.
+     */
+    public int[][] calculateColors() {
+        ImageUtils utils = new ImageUtils();
+        buildIntegralImage(true);
 
-        // Iterate over each sub-image to calculate its brightness and match it to a character
-        for (int i = 0; i < subImages.size(); i++) {
-            double brightness = utils.calculateBrightness(subImages.get(i));
-            char matchedChar = matcher.getCharByImageBrightness(brightness);
+        int[][] colors = new int[rows][resolution];
+        forEachRow(Stage.COLORS, row -> {
+            if (tiling == TilingMode.ADAPTIVE) {
+                utils.calculateAdaptiveTileColorRow(resolution, rows, image, row, colors[row]);
+            } else {
+                utils.calculateTileColorRow(resolution, image, row, colors[row]);
+            }
+        });
+        return colors;
+    }
 
-            // Determine the position of the sub-image in the grid
-            int row = i / subImagesPerRow;
-            int col = i % subImagesPerRow;
-            asciiArt[row][col] = matchedChar;
-        }
+    /**
+     * Matches every tile to a character based on its brightness, the second stage of {@link #run()}.
+     *
+     * @param brightnesses A grid of normalized brightness values, as returned by
+     *                     {@link #calculateBrightnesses()}.
+     * @param matcher      The matcher holding the character set to use.
+     * @return A 2D character array representing the ASCII art.
+     */
+    public char[][] matchCharacters(double[][] brightnesses, SubImgCharMatcher matcher) {
+        char[][] asciiArt = new char[brightnesses.length][];
+        forEachRow(Stage.MATCHING, row -> {
+            double[] brightnessRow = brightnesses[row];
+            char[] asciiRow = new char[brightnessRow.length];
+            for (int col = 0; col < brightnessRow.length; col++) {
+                asciiRow[col] = matcher.getCharByImageBrightness(brightnessRow[col]);
+            }
+            asciiArt[row] = asciiRow;
+        });
+        return asciiArt;
+    }
 
+    /**
+     * Matches every tile to a character based on its shape: each tile is reduced to a black&white
+     * pattern at the resolution of the glyph images, and matched to the glyph with the fewest
+     * differing pixels. Flat tiles, whose pattern would be noise, are matched by brightness instead.
+     *
+     * @param brightnesses A grid of normalized brightness values, as returned by
+     *                     {@link #calculateBrightnesses()}.
+     * @param matcher      The matcher holding the character set to use.
+     * @return A 2D character array representing the ASCII art.
+     */
+    public char[][] matchShapes(double[][] brightnesses, SubImgCharMatcher matcher) {
+        ImageUtils utils = new ImageUtils();
+        buildIntegralImage(false);
+
+        char[][] asciiArt = new char[brightnesses.length][];
+        forEachRow(Stage.MATCHING, row -> {
+            double[] brightnessRow = brightnesses[row];
+            long[][] shapes = new long[brightnessRow.length][];
+            if (tiling == TilingMode.ADAPTIVE) {
+                utils.calculateAdaptiveTileShapeRow(resolution, rows, image, row,
+                        CharConverter.DEFAULT_PIXEL_RESOLUTION, MIN_SHAPE_CONTRAST, shapes);
+            } else {
+                utils.calculateTileShapeRow(resolution, image, row, CharConverter.DEFAULT_PIXEL_RESOLUTION,
+                        MIN_SHAPE_CONTRAST, shapes);
+            }
+            char[] asciiRow = new char[brightnessRow.length];
+            for (int col = 0; col < brightnessRow.length; col++) {
+                asciiRow[col] = shapes[col] == null
+                        ? matcher.getCharByImageBrightness(brightnessRow[col])
+                        : matcher.getCharByImageShape(shapes[col]);
+            }
+            asciiArt[row] = asciiRow;
+        });
         return asciiArt;
     }
-}
 
+    // Calculates the brightness of one row of tiles, in the configured tiling mode.
+    private void calculateBrightnessRow(ImageUtils utils, int row, double[] rowBrightnesses) {
+        if (tiling == TilingMode.ADAPTIVE) {
+            utils.calculateAdaptiveTileBrightnessRow(resolution, rows, image, row, rowBrightnesses);
+        } else {
+            utils.calculateTileBrightnessRow(resolution, image, row, rowBrightnesses);
+        }
+    }
+
+    // Builds the integral image of the source if it was not built yet, as a stage of its own.
+    private void buildIntegralImage(boolean withColor) {
+        Timer timer = RenderMetrics.getInstance().start(Stage.INTEGRAL_IMAGE);
+        image.getIntegralImage(withColor);
+        timer.stop();
+    }
+
+    // Runs a stage for every row of tiles, on the calling thread or spread over a pool of workers.
+    private void forEachRow(Stage stage, IntConsumer action) {
+        Timer timer = RenderMetrics.getInstance().start(stage);
+        forEachIndex(pool(), rows, timer.track(action));
+        timer.stop();
+    }
+
+    // The pool of workers for the configured parallelism, or null when running sequentially. Pools live
+    // as long as the process, their idle workers being daemon threads that retire on their own.
+    private ForkJoinPool pool() {
+        if (parallelism == 1 || rows < MIN_PARALLEL_ROWS) {
+            return null;
+        }
+        if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+            return ForkJoinPool.commonPool();
+        }
+        return POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+
+    // Runs an action for every index below count, on the calling thread if there is no pool.
+    private static void forEachIndex(ForkJoinPool pool, int count, IntConsumer action) {
+        if (pool == null || count == 1) {
+            for (int i = 0; i < count; i++) {
+                action.accept(i);
+            }
+            return;
+        }
+        pool.submit(() -> IntStream.range(0, count).parallel().forEach(action)).join();
+    }
+}
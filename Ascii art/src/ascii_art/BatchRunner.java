@@ -0,0 +1,250 @@
+package ascii_art;
+
+import ascii_art.AsciiArtAlgorithm.TilingMode;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import image_char_matching.CharConverter;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A non-interactive entry point that converts many images in one run. It reads a manifest of jobs,
+ * one per line, and runs them on a bounded pool of workers. Matchers are shared between jobs that
+ * use the same character set, and rendered glyphs are shared by all jobs through
+ * {@link CharConverter}. The time of every job and the overall throughput are reported.
+ * <p>
+ * Each line of the manifest holds four whitespace separated fields:
+ * {@code <image path> <charset> <resolution> <output>}. A field may be put in double quotes to
+ * contain whitespace, as in {@code "my photos/cat.jpeg"}; inside quotes, {@code \"} and
+ * {@code \\} stand for a quote and a backslash. The charset is either the literal characters to use
+ * or the unquoted keyword all for every printable ASCII character; a quoted charset is always
+ * literal, so {@code "all"} means the characters a and l, and {@code "a l"} a, l and a space.
+ * The resolution is the number of characters per row; a resolution that is not a power of two is
+ * rendered with adaptive tiling, like the res command of the shell.
+ * The output is either "console" or the path of an HTML file. Blank lines and lines starting with
+ * '#' are ignored.
+ * Running with the system property {@code ascii_art.metrics=true} also reports the time and
+ * allocation of every pipeline stage, summed over all jobs.
+ */
+public class BatchRunner {
+
+    private static final String FONT_NAME = "Courier New";
+    private static final String ALL_CHARS = "all";
+    private static final int QUEUED_JOBS_PER_WORKER = 2;
+
+    private final int workers;
+    private final ConcurrentHashMap<String, SubImgCharMatcher> matchers = new ConcurrentHashMap<>();
+    private final AtomicInteger failedJobs = new AtomicInteger();
+    private final AtomicLong renderedPixels = new AtomicLong();
+
+    /**
+     * Constructs a BatchRunner.
+     *
+     * @param workers The number of jobs to run at the same time.
+     */
+    public BatchRunner(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("There must be at least one worker.");
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Runs every job of a manifest and reports the results.
+     *
+     * @param manifestPath The path of the manifest file.
+     * @throws IOException If the manifest cannot be read.
+     */
+    public void run(String manifestPath) throws IOException {
+        List<Job> jobs = readManifest(manifestPath);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * QUEUED_JOBS_PER_WORKER),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        long start = System.nanoTime();
+        for (Job job : jobs) {
+            executor.execute(() -> runJob(job));
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int succeeded = jobs.size() - failedJobs.get();
+        System.out.printf("%d of %d jobs succeeded in %.2f s: %.2f images/s, %.2f megapixels/s%n",
+                succeeded, jobs.size(), seconds, succeeded / seconds, renderedPixels.get() / 1e6 / seconds);
+        CharConverter.saveGlyphMetrics();
+    }
+
+    private List<Job> readManifest(String manifestPath) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        List<String> lines = Files.readAllLines(Paths.get(manifestPath));
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            List<Field> fields = splitFields(line, i + 1);
+            if (fields.size() != 4) {
+                throw new IOException(String.format("Line %d of the manifest does not have 4 fields.", i + 1));
+            }
+            Field charset = fields.get(1);
+            String chars = charset.quoted() ? charset.text() : new String(parseCharset(charset.text()));
+            if (chars.isEmpty()) {
+                throw new IOException(String.format("Line %d of the manifest has an empty charset.", i + 1));
+            }
+            try {
+                jobs.add(new Job(fields.get(0).text(), chars, Integer.parseInt(fields.get(2).text()),
+                        fields.get(3).text()));
+            } catch (NumberFormatException e) {
+                throw new IOException(String.format("Line %d of the manifest has an invalid resolution.", i + 1));
+            }
+        }
+        return jobs;
+    }
+
+    // Splits a line of the manifest into fields, as described in the class documentation.
+    private static List<Field> splitFields(String line, int lineNumber) throws IOException {
+        List<Field> fields = new ArrayList<>();
+        int i = 0;
+        while (i < line.length()) {
+            if (Character.isWhitespace(line.charAt(i))) {
+                i++;
+                continue;
+            }
+            StringBuilder text = new StringBuilder();
+            if (line.charAt(i) != '"') {
+                while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+                    text.append(line.charAt(i++));
+                }
+                fields.add(new Field(text.toString(), false));
+                continue;
+            }
+            i++; // opening quote
+            while (true) {
+                if (i >= line.length()) {
+                    throw new IOException(String.format("Line %d of the manifest has an unclosed quote.",
+                            lineNumber));
+                }
+                char c = line.charAt(i++);
+                if (c == '"') {
+                    break;
+                }
+                if (c == '\\' && i < line.length() && (line.charAt(i) == '"' || line.charAt(i) == '\\')) {
+                    c = line.charAt(i++);
+                }
+                text.append(c);
+            }
+            if (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+                throw new IOException(String.format("Line %d of the manifest has text right after a quote.",
+                        lineNumber));
+            }
+            fields.add(new Field(text.toString(), true));
+        }
+        return fields;
+    }
+
+    private void runJob(Job job) {
+        long start = System.nanoTime();
+        try {
+            RenderMetrics.Timer loadTimer = RenderMetrics.getInstance().start(RenderMetrics.Stage.LOAD);
+            Image image = new Image(job.imagePath);
+            loadTimer.stop();
+            if (job.resolution < 1 || job.resolution > image.getWidth()) {
+                throw new IOException("Resolution " + job.resolution + " exceeds the image boundaries.");
+            }
+            SubImgCharMatcher matcher = matchers.computeIfAbsent(job.charset,
+                    charset -> new SubImgCharMatcher(charset.toCharArray()));
+            // padded tiles would crop the image at a resolution that is not a power of two
+            AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(image, null, job.resolution, job.output, 1,
+                    TilingMode.forResolution(job.resolution));
+            if ("console".equals(job.output)) {
+                // Print whole renders only, so the output of concurrent jobs does not interleave
+                char[][] asciiArt = algorithm.matchCharacters(algorithm.calculateBrightnesses(), matcher);
+                synchronized (System.out) {
+                    new ConsoleAsciiOutput().out(asciiArt);
+                }
+            } else {
+                HtmlAsciiOutput output = new HtmlAsciiOutput(job.output, FONT_NAME);
+                algorithm.run(output, matcher);
+                output.checkError(); // a file that could not be written fails the job
+            }
+            renderedPixels.addAndGet((long) image.getWidth() * image.getHeight());
+            System.out.printf("[done] %s -> %s: %dx%d at resolution %d in %.1f ms%n", job.imagePath,
+                    job.output, image.getWidth(), image.getHeight(), job.resolution,
+                    (System.nanoTime() - start) / 1e6);
+        } catch (IOException | RuntimeException e) {
+            failedJobs.incrementAndGet();
+            System.out.printf("[failed] %s: %s%n", job.imagePath, e.getMessage());
+        }
+    }
+
+    // Parses a charset field: the literal characters to use, or "all" for every printable ASCII char.
+    static char[] parseCharset(String charset) {
+        if (ALL_CHARS.equals(charset)) {
+            char[] all = new char[126 - 32 + 1];
+            for (char c = 32; c <= 126; c++) {
+                all[c - 32] = c;
+            }
+            return all;
+        }
+        return charset.toCharArray();
+    }
+
+    // A field of a manifest line, and whether it was quoted.
+    private record Field(String text, boolean quoted) {
+    }
+
+    private static final class Job {
+        private final String imagePath;
+        private final String charset; // the literal characters, with the all keyword expanded
+        private final int resolution;
+        private final String output;
+
+        private Job(String imagePath, String charset, int resolution, String output) {
+            this.imagePath = imagePath;
+            this.charset = charset;
+            this.resolution = resolution;
+            this.output = output;
+        }
+    }
+
+    /**
+     * The entry point of batch conversion.
+     *
+     * @param args The path of the manifest, optionally followed by the number of workers, which
+     *             defaults to the number of available processors.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: BatchRunner <manifest> [workers]");
+            return;
+        }
+        try {
+            int workers = args.length == 2 ? Integer.parseInt(args[1])
+                    : Runtime.getRuntime().availableProcessors();
+            RenderMetrics metrics = RenderMetrics.getInstance();
+            metrics.setEnabled(Boolean.getBoolean("ascii_art.metrics"));
+            new BatchRunner(workers).run(args[0]);
+            if (metrics.isEnabled()) {
+                System.out.println(metrics.summary());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+}
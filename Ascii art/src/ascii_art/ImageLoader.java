@@ -0,0 +1,147 @@
+package ascii_art;
+
+import image.BrightnessPyramid;
+import image.Image;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads images on a background thread, so the shell can keep reading commands while a file is
+ * decoded. Along with the image, the structures every render needs are prepared in advance: the
+ * integral image and the brightness pyramid. Padding needs no preparation, as it is virtual.
+ * The most recently used images are kept, so switching back to one of them costs nothing. They are
+ * bounded both in number and in the estimated memory of their pixels, integral tables and pyramids,
+ * so a few large photos cannot exhaust the heap; the most recently requested image is always kept.
+ * An image is loaded again if its file was modified since it was kept.
+ */
+class ImageLoader {
+
+    /**
+     * An image together with the structures prepared for rendering it.
+     *
+     * @param image   The decoded image.
+     * @param pyramid The brightness pyramid of the image.
+     */
+    record LoadedImage(Image image, BrightnessPyramid pyramid) {
+
+        /**
+         * Estimates the memory held by the image and its structures, including the color tables
+         * of its integral image once a colored render has built them.
+         *
+         * @return The estimated size in bytes.
+         */
+        long estimatedBytes() {
+            long pixels = (long) image.getWidth() * image.getHeight();
+            long tableEntries = (long) (image.getWidth() + 1) * (image.getHeight() + 1);
+            int tables = image.getIntegralImage().hasColor() ? 4 : 1;
+            return pixels * Integer.BYTES + tableEntries * tables * Long.BYTES + pyramid.estimatedBytes();
+        }
+    }
+
+    // A file as it was when it was loaded.
+    private record Key(String path, long lastModified) {
+    }
+
+    private final int maxPyramidResolution;
+    private final long maxBytes;
+    private final ExecutorService executor;
+    private final Map<Key, Future<LoadedImage>> recentImages;
+
+    /**
+     * Constructs a loader.
+     *
+     * @param capacity             The number of recently used images to keep.
+     * @param maxBytes             The estimated memory the kept images may hold together.
+     * @param maxPyramidResolution The finest resolution of the brightness pyramids to build.
+     */
+    ImageLoader(int capacity, long maxBytes, int maxPyramidResolution) {
+        this.maxPyramidResolution = maxPyramidResolution;
+        this.maxBytes = maxBytes;
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "image-loader");
+            thread.setDaemon(true); // never keep the shell from exiting
+            return thread;
+        });
+        // access ordered, so the eldest entry is the least recently used
+        this.recentImages = new LinkedHashMap<>(capacity + 1, 1f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Future<LoadedImage>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Starts loading an image, unless it is already loaded or being loaded. Failures are reported
+     * by the returned future, with the {@link IOException} as the cause.
+     *
+     * @param path The path of the image file.
+     * @return The image and its prepared structures, once they are ready.
+     */
+    Future<LoadedImage> load(String path) {
+        Key key = new Key(path, new File(path).lastModified());
+        Future<LoadedImage> image = recentImages.computeIfAbsent(key, k -> executor.submit(() -> prepare(path)));
+        trim();
+        return image;
+    }
+
+    /**
+     * Forgets the least recently used images while the loaded ones are estimated to hold more than
+     * the memory bound. Images still loading are not counted, and the most recently requested one
+     * is never forgotten. Called on every load, and worth calling when an image finishes loading.
+     */
+    void trim() {
+        long total = 0;
+        for (Future<LoadedImage> image : recentImages.values()) {
+            total += estimatedBytes(image);
+        }
+        var eldest = recentImages.values().iterator();
+        for (int kept = recentImages.size(); total > maxBytes && kept > 1; kept--) {
+            total -= estimatedBytes(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    // The estimated memory of a loaded image, or 0 while it is loading or if it failed to load.
+    private static long estimatedBytes(Future<LoadedImage> image) {
+        if (!image.isDone() || image.isCancelled()) {
+            return 0;
+        }
+        try {
+            return image.get().estimatedBytes();
+        } catch (ExecutionException | InterruptedException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Forgets an image, so the next request for it loads it again, as after a failed load.
+     *
+     * @param path The path of the image file.
+     */
+    void forget(String path) {
+        recentImages.keySet().removeIf(key -> key.path().equals(path));
+    }
+
+    /**
+     * Stops the background thread. Loads that have not started are abandoned.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private LoadedImage prepare(String path) throws IOException {
+        RenderMetrics.Timer timer = RenderMetrics.getInstance().start(RenderMetrics.Stage.LOAD);
+        Image image = new Image(path);
+        timer.stop();
+        // building the pyramid builds the integral image as well
+        return new LoadedImage(image, new BrightnessPyramid(image, maxPyramidResolution));
+    }
+}
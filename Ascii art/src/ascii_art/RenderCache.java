@@ -0,0 +1,138 @@
+package ascii_art;
+
+import ascii_art.AsciiArtAlgorithm.TilingMode;
+import image.BrightnessPyramid;
+import image.Image;
+import image_char_matching.SubImgCharMatcher;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the intermediate results of rendering the current image, so that consecutive asciiArt
+ * commands only redo the stages whose inputs changed. Tile brightness grids are kept per
+ * resolution and tiling mode, the matcher is kept for the last character set, and the last output
+ * is returned as is when neither the grid nor the character set changed. Tile colors for colored
+ * output are kept per grid as well. Everything is dropped when the image changes.
+ * Since any resolution may be asked for, only the most recently used grids are kept: at most
+ * {@value #MAX_GRIDS} of each kind, holding at most {@value #MAX_GRID_TILES} tiles together unless
+ * a single grid is larger.
+ * Every image comes with a brightness pyramid, from which the brightnesses of padded tiling at
+ * every power of two resolution are derived without reading the image again.
+ * The last output is also keyed by whether tiles were matched by shape or by brightness.
+ */
+class RenderCache {
+
+    /**
+     * The finest resolution worth keeping in a pyramid; finer grids are calculated when asked for.
+     */
+    static final int MAX_PYRAMID_RESOLUTION = 1024;
+
+    // The number of brightness grids, and of color grids, kept for the current image
+    private static final int MAX_GRIDS = 8;
+    // The number of tiles the kept grids of each kind may hold together, 32MB of brightnesses
+    private static final int MAX_GRID_TILES = 1 << 22;
+
+    private Image image;
+    private BrightnessPyramid pyramid;
+    private final Map<Grid, double[][]> brightnessGrids = recentlyUsed(MAX_GRIDS);
+    private final Map<Grid, int[][]> colorGrids = recentlyUsed(MAX_GRIDS);
+    private char[] matcherCharSet;
+    private SubImgCharMatcher matcher;
+    private char[][] lastAsciiArt;
+    private Grid lastGrid;
+    private char[] lastCharSet;
+    private boolean lastShapeMatching;
+
+    /**
+     * Sets the image to render, invalidating everything computed for the previous one.
+     *
+     * @param image   The new image.
+     * @param pyramid The brightness pyramid of the new image.
+     */
+    void setImage(Image image, BrightnessPyramid pyramid) {
+        this.image = image;
+        this.pyramid = pyramid;
+        brightnessGrids.clear();
+        colorGrids.clear();
+        lastAsciiArt = null;
+    }
+
+    /**
+     * Renders the current image, reusing whatever was computed by previous renders.
+     *
+     * @param charset     The set of characters to use.
+     * @param resolution  The resolution of the ASCII art.
+     * @param tiling      How the image is divided into tiles.
+     * @param shapeMatching Whether to match tiles by shape rather than by brightness.
+     * @param parallelism The number of threads to use for the stages that have to run.
+     * @return The ASCII art. The array is shared with the cache and must not be modified.
+     */
+    char[][] render(char[] charset, int resolution, TilingMode tiling, boolean shapeMatching, int parallelism) {
+        Grid grid = new Grid(resolution, tiling);
+        if (lastAsciiArt != null && grid.equals(lastGrid) && lastShapeMatching == shapeMatching
+                && Arrays.equals(lastCharSet, charset)) {
+            return lastAsciiArt;
+        }
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(image, charset, resolution, null, parallelism, tiling);
+        double[][] brightnesses = brightnessGrids.computeIfAbsent(grid,
+                key -> tiling == TilingMode.PADDED && pyramid.contains(resolution)
+                        ? pyramid.getBrightnesses(resolution) : algorithm.calculateBrightnesses());
+        if (!Arrays.equals(matcherCharSet, charset)) {
+            matcher = new SubImgCharMatcher(charset);
+            matcherCharSet = charset.clone();
+        }
+        trim(brightnessGrids);
+        lastAsciiArt = shapeMatching ? algorithm.matchShapes(brightnesses, matcher)
+                : algorithm.matchCharacters(brightnesses, matcher);
+        lastGrid = grid;
+        lastShapeMatching = shapeMatching;
+        lastCharSet = charset.clone();
+        return lastAsciiArt;
+    }
+
+    /**
+     * Calculates the mean color of every tile of the current image, reusing the grid computed by a
+     * previous call with the same resolution and tiling mode.
+     *
+     * @param resolution  The resolution of the ASCII art.
+     * @param tiling      How the image is divided into tiles.
+     * @param parallelism The number of threads to use if the grid has to be calculated.
+     * @return The packed RGB colors. The array is shared with the cache and must not be modified.
+     */
+    int[][] renderColors(int resolution, TilingMode tiling, int parallelism) {
+        int[][] colors = colorGrids.computeIfAbsent(new Grid(resolution, tiling), key -> new AsciiArtAlgorithm(
+                image, null, resolution, null, parallelism, tiling).calculateColors());
+        trim(colorGrids);
+        return colors;
+    }
+
+    // Forgets the least recently used grids while they hold too many tiles, keeping the most recent one.
+    private static void trim(Map<Grid, ? extends Object[]> grids) {
+        long tiles = 0;
+        for (Map.Entry<Grid, ? extends Object[]> entry : grids.entrySet()) {
+            tiles += (long) entry.getValue().length * entry.getKey().resolution();
+        }
+        var eldest = grids.entrySet().iterator();
+        for (int kept = grids.size(); tiles > MAX_GRID_TILES && kept > 1; kept--) {
+            Map.Entry<Grid, ? extends Object[]> entry = eldest.next();
+            tiles -= (long) entry.getValue().length * entry.getKey().resolution();
+            eldest.remove();
+        }
+    }
+
+    // A map that keeps only its most recently used entries.
+    private static <K, V> Map<K, V> recentlyUsed(int capacity) {
+        return new LinkedHashMap<>(capacity + 1, 1f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // The layout of a grid of tiles.
+    private record Grid(int resolution, TilingMode tiling) {
+    }
+}
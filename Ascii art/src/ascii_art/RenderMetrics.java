@@ -0,0 +1,271 @@
+package ascii_art;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Records the wall time and the allocated bytes of every stage of the rendering pipeline, so a slow
+ * render can be traced to the stage responsible. Allocation is read from the per-thread counters of
+ * {@link com.sun.management.ThreadMXBean}, including the workers a stage runs rows on.
+ * There is a single instance, disabled by default: while disabled, timing a stage costs one volatile
+ * read and no allocation. It is registered as a JMX MBean the first time it is enabled.
+ */
+public final class RenderMetrics implements RenderMetricsMBean {
+
+    /**
+     * The stages of the pipeline. Padding and tiling are not stages of their own: tiles are read
+     * from the integral image of the source with the padding accounted for analytically, so the
+     * integral image build is where their cost lies.
+     */
+    public enum Stage {
+        LOAD, INTEGRAL_IMAGE, BRIGHTNESS, COLORS, MATCHING
+    }
+
+    private static final String OBJECT_NAME = "ascii_art:type=RenderMetrics";
+    private static final RenderMetrics INSTANCE = new RenderMetrics();
+    private static final Timer DISABLED_TIMER = new Timer(null, null);
+
+    private final int stageCount = Stage.values().length;
+    private final AtomicLongArray runs = new AtomicLongArray(stageCount);
+    private final AtomicLongArray totalNanos = new AtomicLongArray(stageCount);
+    private final AtomicLongArray totalBytes = new AtomicLongArray(stageCount);
+    private final AtomicLongArray lastNanos = new AtomicLongArray(stageCount);
+    private final AtomicLongArray lastBytes = new AtomicLongArray(stageCount);
+    private volatile boolean enabled;
+    private boolean registered;
+
+    private RenderMetrics() {
+    }
+
+    /**
+     * Returns the metrics of this process.
+     *
+     * @return The single instance.
+     */
+    public static RenderMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts timing a run of a stage. The returned timer must be stopped once, by the thread that
+     * started it, to record the run. While the metrics are disabled, it records nothing.
+     *
+     * @param stage The stage that is starting.
+     * @return A running timer.
+     */
+    public Timer start(Stage stage) {
+        if (!enabled) {
+            return DISABLED_TIMER;
+        }
+        Timer timer = new Timer(this, stage);
+        timer.resume();
+        return timer;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public synchronized void setEnabled(boolean enabled) {
+        if (enabled && !registered) {
+            registered = true;
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                Logger.getGlobal().warning(String.format("Failed to register \"%s\"", OBJECT_NAME));
+            }
+        }
+        this.enabled = enabled;
+    }
+
+    @Override
+    public String[] getStages() {
+        String[] names = new String[stageCount];
+        for (Stage stage : Stage.values()) {
+            names[stage.ordinal()] = stage.name();
+        }
+        return names;
+    }
+
+    @Override
+    public long[] getRuns() {
+        return toArray(runs);
+    }
+
+    @Override
+    public long[] getTotalNanos() {
+        return toArray(totalNanos);
+    }
+
+    @Override
+    public long[] getTotalAllocatedBytes() {
+        return toArray(totalBytes);
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < stageCount; i++) {
+            runs.set(i, 0);
+            totalNanos.set(i, 0);
+            totalBytes.set(i, 0);
+            lastNanos.set(i, 0);
+            lastBytes.set(i, 0);
+        }
+    }
+
+    /**
+     * Formats the measurements as a table, one line per stage that ran.
+     *
+     * @return The table, or a note that nothing was recorded.
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder(String.format(Locale.ROOT,
+                "%-15s %6s %12s %12s %14s %14s%n", "stage", "runs", "total ms", "last ms", "total KiB", "last KiB"));
+        boolean any = false;
+        for (Stage stage : Stage.values()) {
+            int i = stage.ordinal();
+            if (runs.get(i) == 0) {
+                continue;
+            }
+            any = true;
+            summary.append(String.format(Locale.ROOT, "%-15s %6d %12.3f %12.3f %14d %14d%n",
+                    stage.name().toLowerCase(Locale.ROOT), runs.get(i), totalNanos.get(i) / 1e6,
+                    lastNanos.get(i) / 1e6, totalBytes.get(i) / 1024, lastBytes.get(i) / 1024));
+        }
+        if (!any) {
+            return "No stages recorded" + (enabled ? "." : ", metrics are off.");
+        }
+        if (AllocationCounter.BEAN == null) {
+            summary.append("Allocation is not measurable on this JVM.").append(System.lineSeparator());
+        }
+        return summary.toString().stripTrailing();
+    }
+
+    private void record(Stage stage, long nanos, long bytes) {
+        int i = stage.ordinal();
+        runs.incrementAndGet(i);
+        totalNanos.addAndGet(i, nanos);
+        totalBytes.addAndGet(i, bytes);
+        lastNanos.set(i, nanos);
+        lastBytes.set(i, bytes);
+    }
+
+    private static long[] toArray(AtomicLongArray values) {
+        long[] array = new long[values.length()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private static long allocatedBytes() {
+        return AllocationCounter.BEAN == null ? 0 : AllocationCounter.BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    // Holds the thread bean, so management classes are only loaded once something is measured.
+    private static final class AllocationCounter {
+        static final com.sun.management.ThreadMXBean BEAN = allocationBean();
+    }
+
+    // The thread bean, if it can count allocated bytes per thread.
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean allocationBean
+                && allocationBean.isThreadAllocatedMemorySupported()) {
+            if (!allocationBean.isThreadAllocatedMemoryEnabled()) {
+                allocationBean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return allocationBean;
+        }
+        return null;
+    }
+
+    /**
+     * Measures one run of a stage. A run may be made of several segments, as when rows are produced
+     * in batches interleaved with other stages: the timer is paused between segments. Work handed to
+     * other threads is measured by wrapping it with {@link #track}.
+     */
+    public static final class Timer {
+
+        private final RenderMetrics metrics;
+        private final Stage stage;
+        private final Thread owner = Thread.currentThread();
+        private final LongAdder workerBytes = new LongAdder();
+        private long nanos;
+        private long bytes;
+        private long segmentStartNanos;
+        private long segmentStartBytes;
+        private boolean running;
+
+        private Timer(RenderMetrics metrics, Stage stage) {
+            this.metrics = metrics;
+            this.stage = stage;
+        }
+
+        /**
+         * Starts a new segment of the run, if the timer is paused.
+         */
+        public void resume() {
+            if (metrics == null || running) {
+                return;
+            }
+            running = true;
+            segmentStartBytes = allocatedBytes();
+            segmentStartNanos = System.nanoTime();
+        }
+
+        /**
+         * Ends the current segment of the run, if the timer is running.
+         */
+        public void pause() {
+            if (metrics == null || !running) {
+                return;
+            }
+            nanos += System.nanoTime() - segmentStartNanos;
+            bytes += allocatedBytes() - segmentStartBytes;
+            running = false;
+        }
+
+        /**
+         * Wraps per-row work that may run on other threads, so the bytes it allocates there are
+         * counted. Work that runs on the thread that owns the timer is already counted by it.
+         *
+         * @param action The work to wrap.
+         * @return The wrapped work, or the work itself if nothing is recorded.
+         */
+        public IntConsumer track(IntConsumer action) {
+            if (metrics == null || AllocationCounter.BEAN == null) {
+                return action;
+            }
+            return index -> {
+                if (Thread.currentThread() == owner) {
+                    action.accept(index);
+                    return;
+                }
+                long start = allocatedBytes();
+                action.accept(index);
+                workerBytes.add(allocatedBytes() - start);
+            };
+        }
+
+        /**
+         * Ends the run and records it.
+         */
+        public void stop() {
+            if (metrics == null) {
+                return;
+            }
+            pause();
+            metrics.record(stage, nanos, bytes + workerBytes.sum());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ascii_art;
+
+/**
+ * The management interface of {@link RenderMetrics}, as seen through JMX. The per-stage arrays are
+ * indexed like {@link #getStages()}.
+ */
+public interface RenderMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns the names of the pipeline stages, in the order of the per-stage arrays.
+     *
+     * @return The stage names.
+     */
+    String[] getStages();
+
+    /**
+     * Returns the number of times each stage ran since the metrics were last reset.
+     *
+     * @return The run count of each stage.
+     */
+    long[] getRuns();
+
+    /**
+     * Returns the total wall time spent in each stage, in nanoseconds.
+     *
+     * @return The total time of each stage.
+     */
+    long[] getTotalNanos();
+
+    /**
+     * Returns the total number of bytes allocated by each stage, on all the threads it ran on.
+     *
+     * @return The total allocation of each stage, or zeros if the JVM cannot measure allocation.
+     */
+    long[] getTotalAllocatedBytes();
+
+    /**
+     * Discards every measurement recorded so far.
+     */
+    void reset();
+}
@@ -1,10 +1,15 @@
 package ascii_art;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.LinkedHashSet;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import ascii_art.AsciiArtAlgorithm.TilingMode;
 import image.Image;
+import image_char_matching.CharConverter;
 import ascii_output.*;
 
 
@@ -12,18 +17,33 @@ import ascii_output.*;
  * The Shell class acts as the main interface for the ASCII art application, handling user interactions
  * and commands to manipulate ASCII art generation settings and processes. It supports operations such
  * as adding/removing characters, changing resolution, selecting images, and choosing output methods.
+ * Images are loaded in the background: the image command returns at once, and only the commands
+ * that need the new image wait for it.
  */
 public class Shell {
 
+    private static final int RECENT_IMAGES = 4;
+    // The recently used images may hold up to 1/RECENT_IMAGES_HEAP_DIVISOR of the maximum heap
+    private static final int RECENT_IMAGES_HEAP_DIVISOR = 4;
+
     private final int defaultResolution = 128;
     private final char[] defaultCharSet = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
     private final String defaultImagePath = "cat.jpeg";
     private final String defaultOutput = "console";
+    private final int parallelism = Runtime.getRuntime().availableProcessors();
     private int userResolution;
     private LinkedHashSet<Character> userCharSet;
     private String userImagePath;
     private String userOutput;
     private Image UserImage;
+    private boolean userColor;
+    private boolean userShapeMatching;
+    private TilingMode userTiling = TilingMode.PADDED;
+    private final RenderCache renderCache = new RenderCache();
+    private final ImageLoader imageLoader = new ImageLoader(RECENT_IMAGES,
+            Runtime.getRuntime().maxMemory() / RECENT_IMAGES_HEAP_DIVISOR, RenderCache.MAX_PYRAMID_RESOLUTION);
+    private Future<ImageLoader.LoadedImage> pendingImage;
+    private String pendingImagePath;
 
     /**
      * Initializes the Shell with default settings for ASCII art generation.
@@ -46,9 +66,13 @@ public class Shell {
     public void run() {
 
         try {
-            this.UserImage = new Image(userImagePath); //Load the default image here to catch exceptions early
-        } catch (IOException e) {
-            System.out.println("Initial image load failed: " + e.getMessage());
+            setImage(imageLoader.load(userImagePath).get()); //Load the default image here to catch exceptions early
+        } catch (ExecutionException e) {
+            System.out.println("Initial image load failed: " + e.getCause().getMessage());
+            imageLoader.shutdown();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return;
         }
 
@@ -58,6 +82,8 @@ public class Shell {
 
             try {
                 if ("exit".equals(userInput)) {
+                    CharConverter.saveGlyphMetrics(); // let the next session skip rasterising glyphs
+                    imageLoader.shutdown();
                     break;
                 } else if ("chars".equals(userInput)) {
                     printCharset();
@@ -66,12 +92,22 @@ public class Shell {
                 } else if (userInput.startsWith("remove ")) {
                     removeUserCharacters(userInput.substring(7));
                 } else if (userInput.startsWith("res")) {
+                    awaitPendingImage();
                     changeResolution(userInput.length() > 3 ? userInput.substring(4) : "");
                 } else if (userInput.startsWith("image ")) {
                     changeImage(userInput.substring(6).trim());
                 } else if (userInput.startsWith("output ")) {
                     changeOutputMethod(userInput.substring(7).trim());
+                } else if (userInput.startsWith("color ")) {
+                    changeColorMode(userInput.substring(6).trim());
+                } else if (userInput.startsWith("tiling ")) {
+                    changeTilingMode(userInput.substring(7).trim());
+                } else if (userInput.startsWith("match ")) {
+                    changeMatchMode(userInput.substring(6).trim());
+                } else if (userInput.startsWith("stats")) {
+                    handleStats(userInput.substring(5).trim());
                 } else if ("asciiArt".equals(userInput)) {
+                    awaitPendingImage();
                     runAsciiArt();
                 } else {
                     System.out.println("Did not execute due to incorrect command.");
@@ -88,15 +124,20 @@ public class Shell {
             return;
         }
         char[] reformattedCharSet = reformatCharSet(userCharSet);
-        AsciiArtAlgorithm runAsciiArt = new AsciiArtAlgorithm(UserImage, reformattedCharSet,
-                userResolution, userOutput);
-        char[][] asciifiedImage = runAsciiArt.run();
+        // the first colored render adds color tables to the loaded luminance table, without recomputing it
+        int[][] colors = userColor ? renderCache.renderColors(userResolution, userTiling, parallelism) : null;
+        char[][] asciifiedImage = renderCache.render(reformattedCharSet, userResolution, userTiling, userShapeMatching,
+                parallelism);
+        ColoredAsciiOutput asciiOutput;
         if (Objects.equals(userOutput, "console")) {
-            ConsoleAsciiOutput consoleAsciiOutput = new ConsoleAsciiOutput();
-            consoleAsciiOutput.out(asciifiedImage);
+            asciiOutput = new ConsoleAsciiOutput();
         } else {
-            HtmlAsciiOutput htmlAsciiOutput = new HtmlAsciiOutput("out.html", "Courier New");
-            htmlAsciiOutput.out(asciifiedImage);
+            asciiOutput = new HtmlAsciiOutput("out.html", "Courier New");
+        }
+        if (userColor) {
+            asciiOutput.out(asciifiedImage, colors);
+        } else {
+            asciiOutput.out(asciifiedImage);
         }
     }
 
@@ -121,6 +162,80 @@ public class Shell {
     }
 
 
+    private void changeColorMode(String mode) throws IOException {
+        if ("on".equals(mode) || "off".equals(mode)) {
+            userColor = "on".equals(mode);
+            System.out.println("Color output turned " + mode + ".");
+        } else {
+            throw new IOException("Did not change color mode due to incorrect format.");
+        }
+    }
+
+    private void setImage(ImageLoader.LoadedImage loaded) {
+        this.UserImage = loaded.image();
+        renderCache.setImage(loaded.image(), loaded.pyramid());
+    }
+
+    // Switches to the image requested by the last image command, waiting for it if it is still loading.
+    // If it failed to load, the current image is kept.
+    private void awaitPendingImage() {
+        if (pendingImage == null) {
+            return;
+        }
+        Future<ImageLoader.LoadedImage> pending = pendingImage;
+        String imagePath = pendingImagePath;
+        pendingImage = null;
+        pendingImagePath = null;
+        try {
+            setImage(pending.get());
+            imageLoader.trim(); // The image just loaded now counts towards the memory bound
+            this.userImagePath = imagePath; // Update the path to the new image
+        } catch (ExecutionException e) {
+            imageLoader.forget(imagePath);
+            System.out.println("Did not change image to " + imagePath + ": " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleStats(String command) throws IOException {
+        RenderMetrics metrics = RenderMetrics.getInstance();
+        if (command.isEmpty()) {
+            System.out.println(metrics.summary());
+        } else if ("on".equals(command) || "off".equals(command)) {
+            metrics.setEnabled("on".equals(command));
+            System.out.println("Stage metrics turned " + command + ".");
+        } else if ("reset".equals(command)) {
+            metrics.reset();
+            System.out.println("Stage metrics reset.");
+        } else {
+            throw new IOException("Did not execute stats due to incorrect format.");
+        }
+    }
+
+    private void changeTilingMode(String mode) throws IOException {
+        if ("padded".equals(mode)) {
+            if (TilingMode.forResolution(userResolution) != TilingMode.PADDED) {
+                throw new IOException("Did not change tiling mode since the resolution is not a power of two.");
+            }
+            userTiling = TilingMode.PADDED;
+        } else if ("adaptive".equals(mode)) {
+            userTiling = TilingMode.ADAPTIVE;
+        } else {
+            throw new IOException("Did not change tiling mode due to incorrect format.");
+        }
+        System.out.println("Tiling set to " + mode + ".");
+    }
+
+    private void changeMatchMode(String mode) throws IOException {
+        if ("brightness".equals(mode) || "shape".equals(mode)) {
+            userShapeMatching = "shape".equals(mode);
+            System.out.println("Matching characters by " + mode + ".");
+        } else {
+            throw new IOException("Did not change matching mode due to incorrect format.");
+        }
+    }
+
     private void changeResolution(String command) throws IOException {
         int imgWidth = this.UserImage.getWidth();
         int imgHeight = this.UserImage.getHeight();
@@ -139,6 +254,22 @@ public class Shell {
             } else {
                 throw new IOException("Did not change resolution due to exceeding boundaries.");
             }
+        } else if (command.matches("\\d+")) {
+            int resolution;
+            try {
+                resolution = Integer.parseInt(command);
+            } catch (NumberFormatException e) {
+                throw new IOException("Did not change resolution due to exceeding boundaries.");
+            }
+            if (resolution < minCharsInRow || resolution > maxCharsInRow) {
+                throw new IOException("Did not change resolution due to exceeding boundaries.");
+            }
+            userResolution = resolution;
+            if (userTiling == TilingMode.PADDED
+                    && TilingMode.forResolution(resolution) == TilingMode.ADAPTIVE) {
+                userTiling = TilingMode.ADAPTIVE;
+                System.out.println("Tiling set to adaptive.");
+            }
         } else {
             throw new IOException("Did not change resolution due to incorrect format.");
         }
@@ -148,9 +279,12 @@ public class Shell {
 
 
     private void changeImage(String imagePath) throws IOException {
-        this.UserImage = new Image(imagePath); // Assuming Image constructor can throw IOException
-        this.userImagePath = imagePath; // Update the path to the new image
-        System.out.println("Image changed successfully to " + imagePath);
+        if (!new File(imagePath).isFile()) {
+            throw new IOException("Did not change image since " + imagePath + " does not exist.");
+        }
+        pendingImage = imageLoader.load(imagePath); // decoded in the background, awaited when first needed
+        pendingImagePath = imagePath;
+        System.out.println("Loading image " + imagePath + " in the background.");
 
     }
 
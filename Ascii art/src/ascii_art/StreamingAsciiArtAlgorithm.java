@@ -0,0 +1,266 @@
+package ascii_art;
+
+import image.IntegralImage;
+import image.TileGrid;
+import image_char_matching.CharConverter;
+import image_char_matching.SubImgCharMatcher;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.StreamingAsciiOutput;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Generates ASCII art from an image file read top to bottom, without building
+ * an {@link image.Image} or integral tables for it. Source rows are accumulated into the brightness of
+ * the tiles of their band, a band being the source rows covered by one row of tiles, and each band's
+ * row of characters is handed on as soon as its last source row has been decoded.
+ * Memory is bounded whatever the size of the image: tiled files are read one row of tiles at a time,
+ * and other files in runs of whole rows of at most {@value #MAX_RUN_PIXELS} pixels, decoded through
+ * the source region support of {@link ImageReader} into one reused destination. Readers that cannot
+ * seek to a region, such as those of PNG and JPEG, decode the rows above it again for every run;
+ * runs as large as the bound allows keep that to one pass per {@value #MAX_RUN_PIXELS} pixels of the
+ * file. The result is the same as
+ * that of {@link AsciiArtAlgorithm} with padded tiling on the same file.
+ */
+public class StreamingAsciiArtAlgorithm {
+    // The most pixels decoded at once from a file that is not tiled, 16MB as packed ARGB
+    private static final int MAX_RUN_PIXELS = 1 << 22;
+
+    private final String filename;
+    private final char[] charset;
+    private final int resolution;
+
+    /**
+     * Constructs a StreamingAsciiArtAlgorithm for an image file.
+     *
+     * @param filename   The path of the image file to convert into ASCII art.
+     * @param charset    The set of characters to use for creating ASCII art.
+     * @param resolution The resolution of the ASCII art in terms of character density; a power of two.
+     */
+    public StreamingAsciiArtAlgorithm(String filename, char[] charset, int resolution) {
+        this.filename = filename;
+        this.charset = charset;
+        this.resolution = resolution;
+    }
+
+    /**
+     * Executes the ASCII art generation algorithm, handing on each row of characters as soon
+     * as its band of the image has been processed.
+     *
+     * @param rowConsumer Receives the rows of the ASCII art, top to bottom.
+     * @throws IOException              If the file cannot be read or its format is not supported.
+     * @throws IllegalArgumentException If the resolution does not fit the padded image.
+     */
+    public void run(Consumer<char[]> rowConsumer) throws IOException {
+        SubImgCharMatcher matcher = new SubImgCharMatcher(charset);
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("No image reader for " + filename);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                renderBands(reader, matcher, rowConsumer);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Executes the ASCII art generation algorithm, writing each row of characters to the output
+     * as soon as its band of the image has been processed.
+     *
+     * @param output The output to write the rows to.
+     * @throws IOException              If the file cannot be read or its format is not supported.
+     * @throws IllegalArgumentException If the resolution does not fit the padded image.
+     */
+    public void run(StreamingAsciiOutput output) throws IOException {
+        output.begin(resolution, resolution);
+        try {
+            run(output::row);
+        } finally {
+            output.end();
+        }
+    }
+
+    private void renderBands(ImageReader reader, SubImgCharMatcher matcher, Consumer<char[]> rowConsumer)
+            throws IOException {
+        Bands bands = new Bands(reader.getWidth(0), reader.getHeight(0), resolution, matcher, rowConsumer);
+        if (reader.isImageTiled(0) && reader.getTileGridXOffset(0) == 0 && reader.getTileGridYOffset(0) == 0) {
+            readTiles(reader, bands);
+        } else {
+            readRows(reader, bands);
+        }
+        bands.finish();
+    }
+
+    // Reads the image one row of tiles at a time, handing on each of its rows
+    private static void readTiles(ImageReader reader, Bands bands) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        int tileWidth = reader.getTileWidth(0);
+        int tileHeight = reader.getTileHeight(0);
+        BufferedImage[] tileRow = new BufferedImage[(width + tileWidth - 1) / tileWidth];
+        int[] rowPixels = new int[width];
+        for (int tileY = 0; tileY * tileHeight < height; tileY++) {
+            for (int tileX = 0; tileX < tileRow.length; tileX++) {
+                tileRow[tileX] = reader.readTile(0, tileX, tileY);
+            }
+            int rows = Math.min(tileHeight, height - tileY * tileHeight);
+            for (int y = 0; y < rows; y++) {
+                for (int tileX = 0; tileX < tileRow.length; tileX++) {
+                    int columns = Math.min(tileWidth, width - tileX * tileWidth);
+                    tileRow[tileX].getRGB(0, y, columns, 1, rowPixels, tileX * tileWidth, columns);
+                }
+                bands.add(rowPixels);
+            }
+        }
+    }
+
+    // Reads the image in runs of whole source rows into one reused run-sized destination
+    private static void readRows(ImageReader reader, Bands bands) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        int runRows = Math.min(Math.max(MAX_RUN_PIXELS / width, 1), height);
+        ImageTypeSpecifier type = reader.getImageTypes(0).next();
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setDestination(type.createBufferedImage(width, runRows));
+        for (int top = 0; top < height; top += runRows) {
+            int rows = Math.min(runRows, height - top);
+            param.setSourceRegion(new Rectangle(0, top, width, rows));
+            bands.add(reader.read(0, param), rows);
+        }
+    }
+
+    /**
+     * Accumulates source rows, handed on top to bottom, into the brightness of the tiles of their band,
+     * and hands on each band's row of characters once its last source row has been added.
+     */
+    private static final class Bands {
+        private final int height;
+        private final int resolution;
+        private final TileGrid grid;
+        // The source columns of each tile, clipped to the image
+        private final int[] lefts;
+        private final int[] rights;
+        private final long[] tileSums;
+        private final int[] rowPixels;
+        private final SubImgCharMatcher matcher;
+        private final Consumer<char[]> rowConsumer;
+        private int rowsAdded = 0;
+        private int nextBand = 0;
+
+        Bands(int width, int height, int resolution, SubImgCharMatcher matcher, Consumer<char[]> rowConsumer) {
+            TileGrid grid = TileGrid.padded(width, height, resolution);
+            int maxResolution = Math.min(grid.getPaddedWidth(), grid.getPaddedHeight());
+            if (Integer.bitCount(resolution) != 1 || resolution > maxResolution) {
+                throw new IllegalArgumentException("Resolution must be a power of two no greater than "
+                        + maxResolution);
+            }
+            this.height = height;
+            this.resolution = resolution;
+            this.grid = grid;
+            this.lefts = new int[resolution];
+            this.rights = new int[resolution];
+            for (int col = 0; col < resolution; col++) {
+                lefts[col] = grid.sourceColumn(grid.left(col));
+                rights[col] = grid.sourceColumn(grid.left(col + 1));
+            }
+            this.tileSums = new long[resolution];
+            this.rowPixels = new int[width];
+            this.matcher = matcher;
+            this.rowConsumer = rowConsumer;
+        }
+
+        // Adds the first rows of a decoded run of source rows
+        void add(BufferedImage run, int rows) {
+            for (int y = 0; y < rows; y++) {
+                run.getRGB(0, y, rowPixels.length, 1, rowPixels, 0, rowPixels.length);
+                add(rowPixels);
+            }
+        }
+
+        // Adds the next source row
+        void add(int[] pixels) {
+            handOnBandsEndingBy(rowsAdded); // bands lying wholly in the top padding
+            for (int col = 0; col < resolution; col++) {
+                long sum = 0;
+                for (int x = lefts[col]; x < rights[col]; x++) {
+                    sum += IntegralImage.fixedLuma(pixels[x]);
+                }
+                tileSums[col] += sum;
+            }
+            rowsAdded++;
+            handOnBandsEndingBy(rowsAdded);
+        }
+
+        // Hands on the remaining bands, once every source row has been added
+        void finish() {
+            handOnBandsEndingBy(height);
+        }
+
+        private void handOnBandsEndingBy(int row) {
+            long tilePixels = grid.getTileArea();
+            while (nextBand < resolution && bandEdge(nextBand + 1) <= row) {
+                int sourceRows = bandEdge(nextBand + 1) - bandEdge(nextBand);
+                char[] asciiRow = new char[resolution];
+                for (int col = 0; col < resolution; col++) {
+                    long sourceArea = (long) sourceRows * (rights[col] - lefts[col]);
+                    // Every pixel of the tile outside the source is white padding
+                    long total = tileSums[col] + (tilePixels - sourceArea) * IntegralImage.WHITE_LUMA;
+                    asciiRow[col] = matcher.getCharByImageBrightness(
+                            total / (double) tilePixels / IntegralImage.WHITE_LUMA);
+                }
+                Arrays.fill(tileSums, 0);
+                nextBand++;
+                rowConsumer.accept(asciiRow);
+            }
+        }
+
+        // The source row at which a band starts, clipped to the image
+        private int bandEdge(int band) {
+            return grid.sourceRow(grid.top(band));
+        }
+    }
+
+    /**
+     * Converts an image file without loading it whole, writing the rows as they are produced.
+     *
+     * @param args The output, either "console" or the path of an HTML file, the resolution, the
+     *             charset, "all" or the literal characters to use, and the path of the image.
+     */
+    public static void main(String[] args) {
+        if (args.length != 4) {
+            System.out.println("Usage: StreamingAsciiArtAlgorithm <console|file.html> <resolution> <charset> <image>");
+            return;
+        }
+        try {
+            StreamingAsciiArtAlgorithm algorithm = new StreamingAsciiArtAlgorithm(args[3],
+                    BatchRunner.parseCharset(args[2]), Integer.parseInt(args[1]));
+            if ("console".equals(args[0])) {
+                algorithm.run(new ConsoleAsciiOutput());
+            } else {
+                HtmlAsciiOutput output = new HtmlAsciiOutput(args[0], "Courier New");
+                algorithm.run(output);
+                output.checkError();
+            }
+            CharConverter.saveGlyphMetrics();
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output a sequence of 2D arrays of chars,
+ * the frames of an ASCII animation, in some fashion.
+ */
+public interface AnimationOutput {
+    /**
+     * Start a new animation whose frames have the specified dimensions
+     */
+    void begin(int rows, int columns);
+
+    /**
+     * Output the next frame, to be shown for the specified number of milliseconds
+     */
+    void frame(char[][] chars, int delayMillis);
+
+    /**
+     * Finish the animation started by the last call to begin
+     */
+    void end();
+}
@@ -0,0 +1,26 @@
+package ascii_output;
+
+/**
+ * A StreamingAsciiOutput that can also output each char in a color of its own.
+ * Colors are packed RGB ints, as returned by java.awt.Color.getRGB without the alpha.
+ */
+public interface ColoredAsciiOutput extends StreamingAsciiOutput {
+    /**
+     * Output the next row of chars, each in the color at the same index
+     */
+    void row(char[] chars, int[] colors);
+
+    /**
+     * Output the specified 2D array of chars, each in the color at the same position
+     */
+    default void out(char[][] chars, int[][] colors) {
+        begin(chars.length, chars.length == 0 ? 0 : chars[0].length);
+        try {
+            for (int y = 0; y < chars.length; y++) {
+                row(chars[y], colors[y]);
+            }
+        } finally {
+            end();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package ascii_output;
+
+import java.io.PrintStream;
+
+/**
+ * Plays an ASCII animation in the console. Every frame is assembled in a single char buffer and
+ * drawn over the previous one after moving the cursor home, and playback is paced so each frame
+ * stays on screen for its delay. In delta mode only the runs of chars that changed since the
+ * previous frame are drawn, each after moving the cursor to its start.
+ */
+public class ConsoleAnimationOutput implements AnimationOutput {
+    private static final String CLEAR_SCREEN = "\033[2J";
+    private static final char[] CURSOR_HOME = "\033[H".toCharArray();
+    private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
+    // A cursor move costs about as much as re-sending this many unchanged chars
+    private static final int MAX_MERGED_GAP = 4;
+
+    private final PrintStream out;
+    private final boolean deltaEncoded;
+    private char[] frameBuffer = new char[0];
+    private final StringBuilder deltaBuilder = new StringBuilder();
+    private char[][] previousFrame;
+    private long nextFrameTime;
+
+    public ConsoleAnimationOutput() {
+        this(System.out, false);
+    }
+
+    public ConsoleAnimationOutput(PrintStream out, boolean deltaEncoded) {
+        this.out = out;
+        this.deltaEncoded = deltaEncoded;
+    }
+
+    @Override
+    public void begin(int rows, int columns) {
+        out.print(CLEAR_SCREEN);
+        out.flush();
+        previousFrame = null;
+        nextFrameTime = System.nanoTime();
+    }
+
+    @Override
+    public void frame(char[][] chars, int delayMillis) {
+        if (deltaEncoded && previousFrame != null) {
+            drawDelta(chars);
+        } else {
+            fillFrameBuffer(chars);
+            waitUntil(nextFrameTime);
+            out.print(frameBuffer);
+        }
+        out.flush();
+        if (deltaEncoded) {
+            previousFrame = FrameDelta.copy(chars);
+        }
+        nextFrameTime = Math.max(nextFrameTime, System.nanoTime()) + delayMillis * 1_000_000L;
+    }
+
+    @Override
+    public void end() {
+        waitUntil(nextFrameTime);
+    }
+
+    // Draws only the runs of chars that changed since the previous frame.
+    private void drawDelta(char[][] chars) {
+        deltaBuilder.setLength(0);
+        for (FrameDelta.Run run : FrameDelta.changedRuns(previousFrame, chars, MAX_MERGED_GAP)) {
+            // Rows and columns of the terminal count from 1, and every char is followed by a space
+            deltaBuilder.append("\033[").append(run.row + 1).append(';').append(run.start * 2 + 1).append('H');
+            for (int col = run.start; col < run.end; col++) {
+                deltaBuilder.append(chars[run.row][col]).append(' ');
+            }
+        }
+        waitUntil(nextFrameTime);
+        out.print(deltaBuilder);
+    }
+
+    // Assembles a whole frame, preceded by moving the cursor home, in the frame buffer.
+    private void fillFrameBuffer(char[][] chars) {
+        int length = CURSOR_HOME.length;
+        for (char[] row : chars) {
+            length += row.length * 2 + LINE_SEPARATOR.length;
+        }
+        if (frameBuffer.length != length) {
+            frameBuffer = new char[length];
+        }
+        System.arraycopy(CURSOR_HOME, 0, frameBuffer, 0, CURSOR_HOME.length);
+        int position = CURSOR_HOME.length;
+        for (char[] row : chars) {
+            for (char c : row) {
+                frameBuffer[position++] = c;
+                frameBuffer[position++] = ' ';
+            }
+            System.arraycopy(LINE_SEPARATOR, 0, frameBuffer, position, LINE_SEPARATOR.length);
+            position += LINE_SEPARATOR.length;
+        }
+    }
+
+    // Sleeps until the given System.nanoTime value, so frames are shown for their full delay.
+    private static void waitUntil(long time) {
+        long remaining = time - System.nanoTime();
+        while (remaining > 0) {
+            try {
+                Thread.sleep(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            remaining = time - System.nanoTime();
+        }
+    }
+}
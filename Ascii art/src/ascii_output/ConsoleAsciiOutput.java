@@ -1,16 +1,70 @@
 package ascii_output;
 
+import java.io.PrintStream;
+
 /**
  * Output a 2D array of chars to the console.
+ * Each row is assembled in a pre-sized char buffer and printed with a single call,
+ * instead of one call to the synchronized PrintStream per char.
+ * Colored rows use 24-bit ANSI escape sequences, one per run of chars of the same color.
  * @author Dan Nirel
- */public class ConsoleAsciiOutput implements AsciiOutput{
+ */public class ConsoleAsciiOutput implements ColoredAsciiOutput {
+    private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
+    private static final String RESET_COLOR = "\033[0m";
+
+    private final PrintStream out;
+    private char[] rowBuffer = new char[0];
+    private final StringBuilder colorRowBuilder = new StringBuilder();
+
+    public ConsoleAsciiOutput() {
+        this(System.out);
+    }
+
+    public ConsoleAsciiOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(int rows, int columns) {
+        resizeBuffer(columns);
+    }
+
     @Override
-    public void out(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+    public void row(char[] chars) {
+        if (rowBuffer.length != chars.length * 2 + LINE_SEPARATOR.length) {
+            resizeBuffer(chars.length);
+        }
+        for (int x = 0; x < chars.length; x++) {
+            rowBuffer[2 * x] = chars[x];
+            rowBuffer[2 * x + 1] = ' ';
+        }
+        System.arraycopy(LINE_SEPARATOR, 0, rowBuffer, chars.length * 2, LINE_SEPARATOR.length);
+        out.print(rowBuffer);
+        out.flush();
+    }
+
+    @Override
+    public void row(char[] chars, int[] colors) {
+        colorRowBuilder.setLength(0);
+        for (int x = 0; x < chars.length; x++) {
+            if (x == 0 || colors[x] != colors[x - 1]) {
+                int rgb = colors[x];
+                colorRowBuilder.append("\033[38;2;").append((rgb >> 16) & 0xFF).append(';')
+                        .append((rgb >> 8) & 0xFF).append(';').append(rgb & 0xFF).append('m');
             }
-            System.out.println();
+            colorRowBuilder.append(chars[x]).append(' ');
         }
+        colorRowBuilder.append(RESET_COLOR).append(LINE_SEPARATOR);
+        out.print(colorRowBuilder);
+        out.flush();
+    }
+
+    @Override
+    public void end() {
+    }
+
+    // Sizes the buffer for a row of the given width: each char is followed by a space.
+    private void resizeBuffer(int columns) {
+        rowBuffer = new char[columns * 2 + LINE_SEPARATOR.length];
     }
 }
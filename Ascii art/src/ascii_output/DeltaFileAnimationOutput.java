@@ -0,0 +1,85 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Output an ASCII animation to a compact patch file. The first frame is stored whole and every
+ * later frame only as the runs of chars that changed since the frame before it.
+ * <p>
+ * The file is UTF-8 text. It starts with a header line {@code ascii-delta 1 <rows> <columns>}.
+ * Every frame starts with a line {@code frame <delay millis> <run count>}, followed by one line per run:
+ * {@code <row> <column> <length> <chars>}, where the chars are exactly length chars long, so they may
+ * contain spaces. Rows and columns count from 0.
+ * <p>
+ * A failed write is logged and drops the rest of the output; callers that must know about it
+ * can ask with {@link #checkError()}.
+ */
+public class DeltaFileAnimationOutput implements AnimationOutput {
+    private static final String FORMAT_HEADER = "ascii-delta 1";
+    // A run line costs about as much as this many unchanged chars
+    private static final int MAX_MERGED_GAP = 8;
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
+    private final OutputFile file;
+    private char[][] previousFrame;
+
+    public DeltaFileAnimationOutput(String filename) {
+        this.file = new OutputFile(filename);
+    }
+
+    @Override
+    public void begin(int rows, int columns) {
+        previousFrame = null;
+        try {
+            file.open(StandardCharsets.UTF_8, WRITE_BUFFER_SIZE)
+                    .write(FORMAT_HEADER + " " + rows + " " + columns + "\n");
+        } catch(IOException e) {
+            file.fail(e);
+        }
+    }
+
+    @Override
+    public void frame(char[][] chars, int delayMillis) {
+        if (!file.isOpen()) {
+            return;
+        }
+        List<FrameDelta.Run> runs = FrameDelta.changedRuns(previousFrame, chars, MAX_MERGED_GAP);
+        try {
+            BufferedWriter writer = file.writer();
+            writer.write("frame " + delayMillis + " " + runs.size() + "\n");
+            for (FrameDelta.Run run : runs) {
+                writer.write(run.row + " " + run.start + " " + (run.end - run.start) + " ");
+                writer.write(chars[run.row], run.start, run.end - run.start);
+                writer.write('\n');
+            }
+        } catch(IOException e) {
+            file.fail(e);
+        }
+        previousFrame = FrameDelta.copy(chars);
+    }
+
+    @Override
+    public void end() {
+        if (!file.isOpen()) {
+            return;
+        }
+        try {
+            file.close();
+        } catch(IOException e) {
+            file.fail(e);
+        }
+    }
+
+    /**
+     * Throws the error that made the last output fail, if any, so a failed file is not mistaken for
+     * a written one.
+     *
+     * @throws IOException The first write error since the last call to begin.
+     */
+    public void checkError() throws IOException {
+        file.checkError();
+    }
+}
@@ -0,0 +1,82 @@
+package ascii_output;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The difference between two consecutive frames of an ASCII animation, as the runs of chars that
+ * changed in each row. Runs separated by only a few unchanged chars are merged, since re-sending
+ * a short gap costs less than positioning at the start of another run.
+ */
+class FrameDelta {
+
+    /**
+     * A run of changed chars within one row of a frame.
+     */
+    static final class Run {
+        final int row;
+        final int start;
+        final int end;
+
+        private Run(int row, int start, int end) {
+            this.row = row;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Finds the runs of chars that differ between two frames. If there is no previous frame, or it has
+     * other dimensions, every row of the current frame is one run.
+     *
+     * @param previous The previous frame, or null.
+     * @param current  The current frame.
+     * @param maxGap   The largest number of unchanged chars to include in a run to merge it with the next.
+     * @return The runs, in row order and left to right within each row.
+     */
+    static List<Run> changedRuns(char[][] previous, char[][] current, int maxGap) {
+        List<Run> runs = new ArrayList<>();
+        boolean comparable = previous != null && previous.length == current.length;
+        for (int row = 0; row < current.length; row++) {
+            char[] now = current[row];
+            if (!comparable || previous[row].length != now.length) {
+                runs.add(new Run(row, 0, now.length));
+                continue;
+            }
+            char[] before = previous[row];
+            int start = -1;
+            int lastChanged = -1;
+            for (int col = 0; col < now.length; col++) {
+                if (now[col] == before[col]) {
+                    continue;
+                }
+                if (start >= 0 && col - lastChanged - 1 > maxGap) {
+                    runs.add(new Run(row, start, lastChanged + 1));
+                    start = -1;
+                }
+                if (start < 0) {
+                    start = col;
+                }
+                lastChanged = col;
+            }
+            if (start >= 0) {
+                runs.add(new Run(row, start, lastChanged + 1));
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Copies a frame, so it can be compared with the next one even if the caller reuses its arrays.
+     */
+    static char[][] copy(char[][] frame) {
+        char[][] copy = new char[frame.length][];
+        for (int row = 0; row < frame.length; row++) {
+            copy[row] = frame[row].clone();
+        }
+        return copy;
+    }
+
+    private FrameDelta() {
+    }
+}
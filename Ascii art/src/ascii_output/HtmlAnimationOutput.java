@@ -0,0 +1,116 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Output an ASCII animation to a single HTML file viewable in a web browser.
+ * Every frame is written as its own paragraph as soon as it arrives, and a CSS animation,
+ * written once the total duration is known, shows each frame in turn for its delay.
+ * A failed write is logged and drops the rest of the output; callers that must know about it
+ * can ask with {@link #checkError()}.
+ */
+public class HtmlAnimationOutput implements AnimationOutput {
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
+    private final String fontName;
+    private final OutputFile file;
+    private final List<Integer> delays = new ArrayList<>();
+    private final StringBuilder frameBuilder = new StringBuilder();
+
+    public HtmlAnimationOutput(String filename, String fontName) {
+        this.fontName = fontName;
+        this.file = new OutputFile(filename);
+    }
+
+    @Override
+    public void begin(int rows, int columns) {
+        delays.clear();
+        try {
+            file.open(Charset.defaultCharset(), WRITE_BUFFER_SIZE).write(HtmlPage.header(fontName, columns,
+                "<div style=\"POSITION:relative;\">\n"+
+                "<style>\n"+
+                ".frame {"+
+                    "\tPOSITION:absolute;"+
+                    "\tWIDTH:100%;"+
+                    "\tMARGIN:0;"+
+                    "\tVISIBILITY:hidden;",
+                "}\n"+
+                "</style>\n"));
+        } catch(IOException e) {
+            file.fail(e);
+        }
+    }
+
+    @Override
+    public void frame(char[][] chars, int delayMillis) {
+        if (!file.isOpen()) {
+            return;
+        }
+        frameBuilder.setLength(0);
+        frameBuilder.append("<p class=\"frame\" id=\"f").append(delays.size()).append("\">\n");
+        for (char[] row : chars) {
+            for (char c : row) {
+                switch(c) {
+                    case '<': frameBuilder.append("&lt;");  break;
+                    case '>': frameBuilder.append("&gt;");  break;
+                    case '&': frameBuilder.append("&amp;"); break;
+                    default:  frameBuilder.append(c);
+                }
+            }
+            frameBuilder.append('\n');
+        }
+        frameBuilder.append("</p>\n");
+        delays.add(delayMillis);
+        try {
+            file.writer().write(frameBuilder.toString());
+        } catch(IOException e) {
+            file.fail(e);
+        }
+    }
+
+    @Override
+    public void end() {
+        if (!file.isOpen()) {
+            return;
+        }
+        try {
+            long total = 0;
+            for (int delay : delays) {
+                total += delay;
+            }
+            // Each frame is visible during its own slice of the cycle
+            StringBuilder style = new StringBuilder("<style>\n");
+            long start = 0;
+            for (int i = 0; i < delays.size(); i++) {
+                double from = total == 0 ? 0 : 100.0 * start / total;
+                double to = total == 0 ? 100 : 100.0 * (start + delays.get(i)) / total;
+                style.append(String.format(Locale.ROOT,
+                        "@keyframes k%d { 0%% {visibility:hidden;} %f%% {visibility:visible;} " +
+                                "%f%% {visibility:hidden;} }%n" +
+                        "#f%d { animation: k%d %dms step-end infinite; }%n",
+                        i, from, to, i, i, Math.max(total, 1)));
+                start += delays.get(i);
+            }
+            style.append("</style>\n");
+            file.writer().write(style.toString());
+            file.writer().write("</div>\n" + HtmlPage.FOOTER);
+            file.close();
+        } catch(IOException e) {
+            file.fail(e);
+        }
+    }
+
+    /**
+     * Throws the error that made the last output fail, if any, so a failed file is not mistaken for
+     * a written one.
+     *
+     * @throws IOException The first write error since the last call to begin.
+     */
+    public void checkError() throws IOException {
+        file.checkError();
+    }
+}
@@ -1,63 +1,139 @@
 package ascii_output;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.logging.Logger;
+import java.nio.charset.Charset;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * The file is opened by begin, written a row at a time and closed by end. Each row is escaped into
+ * a reusable char buffer and written in a single call, so no object is allocated per character.
+ * Colored rows wrap every run of chars of the same color in a single span.
+ * A failed write is logged and drops the rest of the output; callers that must know about it
+ * can ask with {@link #checkError()}.
  * @author Dan Nirel
  */
-public class HtmlAsciiOutput implements AsciiOutput {
-    private static final double BASE_LINE_SPACING = 0.8;
-    private static final double BASE_FONT_SIZE = 150.0;
+public class HtmlAsciiOutput implements ColoredAsciiOutput {
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final char[] LESS_THAN = "&lt;".toCharArray();
+    private static final char[] GREATER_THAN = "&gt;".toCharArray();
+    private static final char[] AMPERSAND = "&amp;".toCharArray();
+    private static final int MAX_ESCAPE_LENGTH = AMPERSAND.length;
+    private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     private final String fontName;
-    private final String filename;
+    private final OutputFile file;
+    private char[] rowBuffer = new char[0];
+    private final StringBuilder colorRowBuilder = new StringBuilder();
 
     public HtmlAsciiOutput(String filename, String fontName) {
         this.fontName = fontName;
-        this.filename = filename;
+        this.file = new OutputFile(filename);
     }
 
     @Override
-    public void out(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                "<!DOCTYPE html>\n"+
-                "<html>\n"+
-                "<body style=\""+
-                    "\tCOLOR:#000000;"+
-                    "\tTEXT-ALIGN:center;"+
-                    "\tFONT-SIZE:1px;\">\n"+
-                "<p style=\""+
-                    "\twhite-space:pre;"+
-                    "\tFONT-FAMILY:%s;"+
-                    "\tFONT-SIZE:%frem;"+
-                    "\tLETTER-SPACING:0.15em;"+
-                    "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
+    public void begin(int rows, int columns) {
+        try {
+            file.open(Charset.defaultCharset(), WRITE_BUFFER_SIZE)
+                    .write(HtmlPage.header(fontName, columns, "<p style=\"", "\">\n"));
+        } catch(IOException e) {
+            file.fail(e);
+        }
+    }
+
+    @Override
+    public void row(char[] chars) {
+        if (!file.isOpen()) {
+            return;
+        }
+        // Escape the row into the reusable buffer and write it in one call
+        int required = chars.length * MAX_ESCAPE_LENGTH + LINE_SEPARATOR.length;
+        if (rowBuffer.length < required) {
+            rowBuffer = new char[required];
+        }
+        int length = 0;
+        for (char c : chars) {
+            switch(c) {
+                case '<': length = append(LESS_THAN, length);  break;
+                case '>': length = append(GREATER_THAN, length);  break;
+                case '&': length = append(AMPERSAND, length); break;
+                default:  rowBuffer[length++] = c;
+            }
+        }
+        length = append(LINE_SEPARATOR, length);
+        try {
+            file.writer().write(rowBuffer, 0, length);
+        } catch(IOException e) {
+            file.fail(e);
+        }
+    }
+
+    @Override
+    public void row(char[] chars, int[] colors) {
+        if (!file.isOpen()) {
+            return;
+        }
+        colorRowBuilder.setLength(0);
+        for (int x = 0; x < chars.length; x++) {
+            if (x == 0 || colors[x] != colors[x - 1]) {
+                if (x > 0) {
+                    colorRowBuilder.append("</span>");
                 }
-                writer.newLine();
+                colorRowBuilder.append("<span style=\"color:#");
+                appendHexColor(colorRowBuilder, colors[x]);
+                colorRowBuilder.append("\">");
+            }
+            switch(chars[x]) {
+                case '<': colorRowBuilder.append(LESS_THAN);  break;
+                case '>': colorRowBuilder.append(GREATER_THAN);  break;
+                case '&': colorRowBuilder.append(AMPERSAND); break;
+                default:  colorRowBuilder.append(chars[x]);
             }
-            writer.write(
-                "</p>\n"+
-                "</body>\n"+
-                "</html>\n");
+        }
+        if (chars.length > 0) {
+            colorRowBuilder.append("</span>");
+        }
+        colorRowBuilder.append(LINE_SEPARATOR);
+        try {
+            file.writer().append(colorRowBuilder);
         } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            file.fail(e);
+        }
+    }
+
+    // Copies an escape sequence into the row buffer at the given position, returning the new position.
+    private int append(char[] sequence, int position) {
+        System.arraycopy(sequence, 0, rowBuffer, position, sequence.length);
+        return position + sequence.length;
+    }
+
+    @Override
+    public void end() {
+        if (!file.isOpen()) {
+            return;
         }
+        try {
+            file.writer().write("</p>\n" + HtmlPage.FOOTER);
+            file.close();
+        } catch(IOException e) {
+            file.fail(e);
+        }
+    }
+
+    // Appends the six hex digits of a packed RGB color, without the alpha.
+    private static void appendHexColor(StringBuilder builder, int rgb) {
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            builder.append(HEX_DIGITS[(rgb >> shift) & 0xF]);
+        }
+    }
+
+    /**
+     * Throws the error that made the last output fail, if any, so a failed file is not mistaken for
+     * a written one.
+     *
+     * @throws IOException The first write error since the last call to begin.
+     */
+    public void checkError() throws IOException {
+        file.checkError();
     }
 }
@@ -0,0 +1,47 @@
+package ascii_output;
+
+/**
+ * The page template shared by the HTML outputs: a centered page whose text is laid out in a
+ * monospace font scaled so that a row of any number of chars fits the width of the page.
+ */
+final class HtmlPage {
+    private static final double BASE_LINE_SPACING = 0.8;
+    private static final double BASE_FONT_SIZE = 150.0;
+
+    /**
+     * The end of the page, written after the element opened by the header is closed.
+     */
+    static final String FOOTER =
+            "</body>\n"+
+            "</html>\n";
+
+    private HtmlPage() {
+    }
+
+    /**
+     * Returns the start of a page, up to the opening of the element holding the text.
+     *
+     * @param fontName   The font of the text.
+     * @param columns    The number of chars in each row of the text.
+     * @param styleOpen  What opens the style of the text, such as the start of a style attribute.
+     * @param styleClose What closes the style of the text and opens the element holding it.
+     * @return The header.
+     */
+    static String header(String fontName, int columns, String styleOpen, String styleClose) {
+        return String.format(
+            "<!DOCTYPE html>\n"+
+            "<html>\n"+
+            "<body style=\""+
+                "\tCOLOR:#000000;"+
+                "\tTEXT-ALIGN:center;"+
+                "\tFONT-SIZE:1px;\">\n"+
+            "%s"+
+                "\twhite-space:pre;"+
+                "\tFONT-FAMILY:%s;"+
+                "\tFONT-SIZE:%frem;"+
+                "\tLETTER-SPACING:0.15em;"+
+                "\tLINE-HEIGHT:%fem;"+
+            "%s",
+                styleOpen, fontName, BASE_FONT_SIZE/columns, BASE_LINE_SPACING, styleClose);
+    }
+}
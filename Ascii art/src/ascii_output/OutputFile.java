@@ -0,0 +1,97 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+/**
+ * The file written by a file output, from begin to end.
+ * The first failed write is logged and kept, and drops the rest of the output, so a half written
+ * file is never mistaken for a complete one: outputs skip their writes once the file is no longer
+ * open, and report the error through {@link #checkError()}.
+ */
+final class OutputFile {
+    private final String filename;
+    private BufferedWriter writer;
+    private IOException error;
+
+    OutputFile(String filename) {
+        this.filename = filename;
+    }
+
+    /**
+     * Opens the file for a new output, forgetting the error of the previous one.
+     *
+     * @param charset    The charset the file is written in.
+     * @param bufferSize The size of the write buffer, in chars.
+     * @return The writer of the file.
+     * @throws IOException If the file cannot be opened.
+     */
+    BufferedWriter open(Charset charset, int bufferSize) throws IOException {
+        error = null;
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), charset), bufferSize);
+        return writer;
+    }
+
+    /**
+     * Returns whether the file is open, neither closed nor failed.
+     *
+     * @return True if the output should keep writing.
+     */
+    boolean isOpen() {
+        return writer != null;
+    }
+
+    /**
+     * Returns the writer of the open file.
+     *
+     * @return The writer, null once the file is closed or failed.
+     */
+    BufferedWriter writer() {
+        return writer;
+    }
+
+    /**
+     * Closes the file at the end of the output.
+     *
+     * @throws IOException If the remaining output cannot be written.
+     */
+    void close() throws IOException {
+        writer.close();
+        writer = null;
+    }
+
+    /**
+     * Reports a failed write once and drops the rest of the output.
+     *
+     * @param e The error of the write.
+     */
+    void fail(IOException e) {
+        if (error == null) {
+            error = e;
+        }
+        Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+                // already reported
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Throws the error that made the last output fail, if any.
+     *
+     * @throws IOException The first write error since the file was last opened.
+     */
+    void checkError() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+    }
+}
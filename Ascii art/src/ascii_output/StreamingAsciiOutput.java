@@ -0,0 +1,37 @@
+package ascii_output;
+
+/**
+ * An AsciiOutput that can also receive the 2D array of chars one row at a time,
+ * so rows can be written as soon as they are produced.
+ */
+public interface StreamingAsciiOutput extends AsciiOutput {
+    /**
+     * Start a new output of the specified dimensions
+     */
+    void begin(int rows, int columns);
+
+    /**
+     * Output the next row of chars
+     */
+    void row(char[] chars);
+
+    /**
+     * Finish the output started by the last call to begin
+     */
+    void end();
+
+    /**
+     * Output the specified 2D array of chars, row by row
+     */
+    @Override
+    default void out(char[][] chars) {
+        begin(chars.length, chars.length == 0 ? 0 : chars[0].length);
+        try {
+            for (char[] row : chars) {
+                row(row);
+            }
+        } finally {
+            end();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package image;
+
+/**
+ * The tile brightnesses of an image at every power of two resolution, like a mipmap.
+ * The finest level holds the exact luminance sums of the tiles of the padded image, read once from
+ * the integral image; every coarser level is derived from the level above it by adding each 2x2
+ * block of tiles together. Since the sums are exact, the brightness of every level is the same as
+ * {@link ImageUtils#calculateTileBrightnesses} would calculate, and reading a level costs only the
+ * division of its sums by the tile area.
+ */
+public class BrightnessPyramid {
+
+    private final long[][] levels;
+    private final int width;
+    private final int height;
+
+    /**
+     * Builds the pyramid of an image.
+     *
+     * @param image         The image, before padding.
+     * @param maxResolution The finest resolution to keep. It is lowered to the largest power of two
+     *                      that does not exceed it nor the dimensions of the padded image.
+     */
+    public BrightnessPyramid(Image image, int maxResolution) {
+        ImageUtils utils = new ImageUtils();
+        width = image.getWidth();
+        height = image.getHeight();
+        TileGrid grid = TileGrid.padded(width, height, 1);
+        int top = Integer.highestOneBit(Math.min(maxResolution,
+                Math.min(grid.getPaddedWidth(), grid.getPaddedHeight())));
+        int levelCount = Integer.numberOfTrailingZeros(top) + 1;
+        levels = new long[levelCount][];
+
+        long[] finest = new long[top * top];
+        long[] rowSums = new long[top];
+        for (int row = 0; row < top; row++) {
+            utils.calculateTileLumaSumRow(top, image, row, rowSums);
+            System.arraycopy(rowSums, 0, finest, row * top, top);
+        }
+        levels[levelCount - 1] = finest;
+
+        for (int level = levelCount - 2; level >= 0; level--) {
+            int resolution = 1 << level;
+            long[] above = levels[level + 1];
+            long[] sums = new long[resolution * resolution];
+            int aboveResolution = resolution * 2;
+            for (int row = 0; row < resolution; row++) {
+                for (int col = 0; col < resolution; col++) {
+                    int index = 2 * row * aboveResolution + 2 * col;
+                    sums[row * resolution + col] = above[index] + above[index + 1]
+                            + above[index + aboveResolution] + above[index + aboveResolution + 1];
+                }
+            }
+            levels[level] = sums;
+        }
+    }
+
+    /**
+     * Returns the finest resolution held by the pyramid.
+     *
+     * @return A power of two.
+     */
+    public int getMaxResolution() {
+        return 1 << (levels.length - 1);
+    }
+
+    /**
+     * Estimates the memory held by the sums of all levels.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long estimatedBytes() {
+        long entries = 0;
+        for (long[] level : levels) {
+            entries += level.length;
+        }
+        return entries * Long.BYTES;
+    }
+
+    /**
+     * Returns whether the pyramid holds a resolution.
+     *
+     * @param resolution The resolution.
+     * @return True if the resolution is a power of two no finer than {@link #getMaxResolution()}.
+     */
+    public boolean contains(int resolution) {
+        return resolution > 0 && Integer.bitCount(resolution) == 1 && resolution <= getMaxResolution();
+    }
+
+    /**
+     * Returns the tile brightnesses at a resolution held by the pyramid.
+     *
+     * @param resolution The number of divisions along each axis.
+     * @return A new resolution x resolution grid of normalized brightness values.
+     */
+    public double[][] getBrightnesses(int resolution) {
+        if (!contains(resolution)) {
+            throw new IllegalArgumentException("Resolution " + resolution + " is not in the pyramid.");
+        }
+        long[] sums = levels[Integer.numberOfTrailingZeros(resolution)];
+        double tileArea = TileGrid.padded(width, height, resolution).getTileArea();
+        double[][] brightnesses = new double[resolution][resolution];
+        for (int row = 0; row < resolution; row++) {
+            for (int col = 0; col < resolution; col++) {
+                brightnesses[row][col] = sums[row * resolution + col] / tileArea / IntegralImage.WHITE_LUMA;
+            }
+        }
+        return brightnesses;
+    }
+}
@@ -3,35 +3,95 @@ package image;
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.File;
 import java.io.IOException;
 
 /**
  * A package-private class of the package image.
+ * Pixels are stored as a flat array of packed ARGB ints, row by row, so that large images do not
+ * allocate a Color object per pixel. An image may also be a view of a rectangle of another image,
+ * sharing its pixel array through an offset and a row stride.
  * @author Dan Nirel
  */
 public class Image {
 
-    private final Color[][] pixelArray;
+    private static final double RED_LUMA_WEIGHT = 0.2126;
+    private static final double GREEN_LUMA_WEIGHT = 0.7152;
+    private static final double BLUE_LUMA_WEIGHT = 0.0722;
+
+    private final int[] pixels;
+    private final int offset;
+    private final int stride;
     private final int width;
     private final int height;
+    private volatile IntegralImage integralImage;
 
     public Image(String filename) throws IOException {
-        BufferedImage im = ImageIO.read(new File(filename));
+        this(read(filename));
+    }
+
+    /**
+     * Copies the pixels of a decoded image, such as a frame of an animation.
+     *
+     * @param im The decoded image.
+     */
+    public Image(BufferedImage im) {
         width = im.getWidth();
         height = im.getHeight();
 
+        pixels = readPixels(im);
+        offset = 0;
+        stride = width;
+    }
 
-        pixelArray = new Color[height][width];
+    public Image(Color[][] pixelArray, int width, int height) {
+        this.pixels = new int[width * height];
+        this.offset = 0;
+        this.stride = width;
+        this.width = width;
+        this.height = height;
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
-                pixelArray[i][j]=new Color(im.getRGB(j, i));
+                pixels[i * width + j] = pixelArray[i][j].getRGB();
             }
         }
     }
 
-    public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
+    /**
+     * Wraps an array of packed ARGB pixels, stored row by row, without copying it.
+     *
+     * @param pixels The packed pixels, of length width * height.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     */
+    public Image(int[] pixels, int width, int height) {
+        this(pixels, 0, width, width, height);
+        if (pixels.length != width * height) {
+            throw new IllegalArgumentException("Pixel array does not match the image dimensions.");
+        }
+    }
+
+    /**
+     * Constructs an image with no pixel storage of its own, for subclasses that compute their pixels.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     */
+    protected Image(int width, int height) {
+        this(null, 0, 0, width, height);
+    }
+
+    // Creates a view over a rectangle of a shared pixel array.
+    private Image(int[] pixels, int offset, int stride, int width, int height) {
+        this.pixels = pixels;
+        this.offset = offset;
+        this.stride = stride;
         this.width = width;
         this.height = height;
     }
@@ -45,18 +105,217 @@ public class Image {
     }
 
     public Color getPixel(int x, int y) {
-        return pixelArray[x][y];
+        return new Color(getRGB(x, y));
+    }
+
+    /**
+     * Returns the packed ARGB value of a pixel.
+     *
+     * @param row The row of the pixel.
+     * @param col The column of the pixel.
+     * @return The pixel as a packed ARGB int.
+     */
+    public int getRGB(int row, int col) {
+        return pixels[offset + row * stride + col];
+    }
+
+    /**
+     * Returns a view of a rectangle of this image. The view shares the pixels of this image,
+     * so creating it does not copy anything.
+     *
+     * @param row    The first row of the rectangle.
+     * @param col    The first column of the rectangle.
+     * @param height The height of the rectangle.
+     * @param width  The width of the rectangle.
+     * @return An image backed by the pixels of this image.
+     */
+    public Image getSubImage(int row, int col, int height, int width) {
+        if (row < 0 || col < 0 || height < 0 || width < 0
+                || row + height > this.height || col + width > this.width) {
+            throw new IndexOutOfBoundsException("Sub-image exceeds the bounds of the image.");
+        }
+        return new Image(pixels, offset + row * stride + col, stride, width, height);
+    }
+
+    /**
+     * Returns the luminance of a pixel, on a 0-255 scale.
+     *
+     * @param row The row of the pixel.
+     * @param col The column of the pixel.
+     * @return The weighted grayscale value of the pixel.
+     */
+    public double getLuma(int row, int col) {
+        return luma(getRGB(row, col));
+    }
+
+    // Sums the luminance of every pixel of the image, on a 0-255 scale per pixel.
+    // The sum is accumulated in fixed point, so it is exact whichever kernel computed the rows.
+    double totalLuma() {
+        int[] lumaRow = new int[width];
+        long total = 0;
+        for (int i = 0; i < height; i++) {
+            fixedLumaRow(i, lumaRow);
+            for (int j = 0; j < width; j++) {
+                total += lumaRow[j];
+            }
+        }
+        return (double) total / IntegralImage.LUMA_SCALE;
+    }
+
+    // Computes the fixed point luminance of every pixel of a row, vectorised when the pixels are stored.
+    void fixedLumaRow(int row, int[] lumaRow) {
+        if (pixels != null) {
+            LumaKernel.INSTANCE.fixedLuma(pixels, offset + row * stride, lumaRow, width);
+            return;
+        }
+        for (int j = 0; j < width; j++) {
+            lumaRow[j] = IntegralImage.fixedLuma(getRGB(row, j));
+        }
+    }
+
+    /**
+     * Returns the luminance summed-area table of this image, building it on first use.
+     *
+     * @return The integral image of this image.
+     */
+    public IntegralImage getIntegralImage() {
+        return getIntegralImage(false);
+    }
+
+    /**
+     * Returns the summed-area table of this image, building it on first use. A table built with
+     * color also serves requests without color, and the color tables are added to a table built
+     * without them, keeping its luminance table, so the luminance of every pixel is computed once.
+     *
+     * @param withColor Whether the tables of the color channels are needed.
+     * @return The integral image of this image.
+     */
+    public IntegralImage getIntegralImage(boolean withColor) {
+        IntegralImage result = integralImage;
+        if (result == null || (withColor && !result.hasColor())) {
+            synchronized (this) {
+                result = integralImage;
+                if (result == null || (withColor && !result.hasColor())) {
+                    result = result == null ? new IntegralImage(this, withColor) : result.withColor(this);
+                    integralImage = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the luminance of a packed RGB value, on a 0-255 scale.
+     *
+     * @param rgb The packed RGB value.
+     * @return The weighted grayscale value.
+     */
+    public static double luma(int rgb) {
+        return ((rgb >> 16) & 0xFF) * RED_LUMA_WEIGHT + ((rgb >> 8) & 0xFF) * GREEN_LUMA_WEIGHT
+                + (rgb & 0xFF) * BLUE_LUMA_WEIGHT;
+    }
+
+    private static BufferedImage read(String filename) throws IOException {
+        BufferedImage im = ImageIO.read(new File(filename));
+        if (im == null) {
+            throw new IOException("No image reader for " + filename);
+        }
+        return im;
+    }
+
+    // Reads the whole raster at once, going straight to the data buffer for the common layouts.
+    private static int[] readPixels(BufferedImage im) {
+        int width = im.getWidth();
+        int height = im.getHeight();
+        int[] pixels = new int[width * height];
+        Raster raster = im.getRaster();
+        boolean directAccess = raster.getParent() == null
+                && raster.getMinX() == 0 && raster.getMinY() == 0
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+        if (directAccess) {
+            switch (im.getType()) {
+                case BufferedImage.TYPE_INT_RGB:
+                    readIntRgb(raster, pixels, width, height);
+                    return pixels;
+                case BufferedImage.TYPE_3BYTE_BGR:
+                    read3ByteBgr(raster, pixels, width, height);
+                    return pixels;
+                case BufferedImage.TYPE_BYTE_GRAY:
+                    readByteGray(raster, im.getColorModel(), pixels, width, height);
+                    return pixels;
+                default:
+                    break;
+            }
+        }
+        im.getRGB(0, 0, width, height, pixels, 0, width);
+        return pixels;
+    }
+
+    private static void readIntRgb(Raster raster, int[] pixels, int width, int height) {
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+        int[] data = buffer.getData();
+        int scanlineStride = sampleModel.getScanlineStride();
+        for (int i = 0; i < height; i++) {
+            int src = buffer.getOffset() + i * scanlineStride;
+            int dst = i * width;
+            for (int j = 0; j < width; j++) {
+                pixels[dst + j] = 0xFF000000 | data[src + j];
+            }
+        }
+    }
+
+    private static void read3ByteBgr(Raster raster, int[] pixels, int width, int height) {
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+        byte[] data = buffer.getData();
+        int scanlineStride = sampleModel.getScanlineStride();
+        int pixelStride = sampleModel.getPixelStride();
+        int redOffset = sampleModel.getOffset(0, 0, 0);
+        int greenOffset = sampleModel.getOffset(0, 0, 1);
+        int blueOffset = sampleModel.getOffset(0, 0, 2);
+        for (int i = 0; i < height; i++) {
+            int src = buffer.getOffset() + i * scanlineStride;
+            int dst = i * width;
+            for (int j = 0; j < width; j++, src += pixelStride) {
+                pixels[dst + j] = 0xFF000000 | (data[src + redOffset] & 0xFF) << 16
+                        | (data[src + greenOffset] & 0xFF) << 8 | (data[src + blueOffset] & 0xFF);
+            }
+        }
+    }
+
+    private static void readByteGray(Raster raster, ColorModel colorModel, int[] pixels,
+                                     int width, int height) {
+        // the gray color space is linear, so map every level through the color model once
+        int[] grayToRgb = new int[256];
+        byte[] level = new byte[1];
+        for (int v = 0; v < grayToRgb.length; v++) {
+            level[0] = (byte) v;
+            grayToRgb[v] = colorModel.getRGB(level);
+        }
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+        byte[] data = buffer.getData();
+        int scanlineStride = sampleModel.getScanlineStride();
+        int pixelStride = sampleModel.getPixelStride();
+        int bandOffset = sampleModel.getBandOffsets()[0];
+        for (int i = 0; i < height; i++) {
+            int src = buffer.getOffset() + i * scanlineStride + bandOffset;
+            int dst = i * width;
+            for (int j = 0; j < width; j++, src += pixelStride) {
+                pixels[dst + j] = grayToRgb[data[src] & 0xFF];
+            }
+        }
     }
 
     public void saveImage(String fileName){
-        // Initialize BufferedImage, assuming Color[][] is already properly populated.
-        BufferedImage bufferedImage = new BufferedImage(pixelArray[0].length, pixelArray.length,
-                BufferedImage.TYPE_INT_RGB);
-        // Set each pixel of the BufferedImage to the color from the Color[][].
-        for (int x = 0; x < pixelArray.length; x++) {
-            for (int y = 0; y < pixelArray[x].length; y++) {
-                bufferedImage.setRGB(y, x, pixelArray[x][y].getRGB());
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                row[j] = getRGB(i, j);
             }
+            bufferedImage.setRGB(0, i, width, 1, row, 0, width);
         }
         File outputfile = new File(fileName+".jpeg");
         try {
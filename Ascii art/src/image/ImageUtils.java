@@ -1,5 +1,4 @@
 package image;
-import java.awt.*;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -18,22 +17,13 @@ public class ImageUtils {
     public double calculateBrightness(Image image) {
         int width = image.getWidth();
         int height = image.getHeight();
-        double totalGrayScale = 0;
-
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                Color color = image.getPixel(i, j);
-                double grayPixel = color.getRed() * 0.2126 + color.getGreen() * 0.7152
-                        + color.getBlue() * 0.0722;
-                totalGrayScale += grayPixel;
-            }
-        }
-        double averageGrayScale = totalGrayScale / (width * height);
+        double averageGrayScale = image.totalLuma() / (width * height);
         return averageGrayScale / 255; // normalize to 0-1
     }
 
     /**
      * Divides an image into smaller sub-images based on a specified resolution.
+     * The sub-images are views that share the pixels of the original image, so no pixel is copied.
      *
      * @param resolution The number of divisions along each axis.
      * @param image The image to be divided.
@@ -47,58 +37,326 @@ public class ImageUtils {
         int subImageWidth = width / resolution;
         int subImageHeight = height / resolution;
 
-        List<Image> subImages = new ArrayList<>();
+        List<Image> subImages = new ArrayList<>(resolution * resolution);
 
         // Iterate over the image to create sub-images
         for (int row = 0; row < resolution; row++) {
             for (int col = 0; col < resolution; col++) {
-                // Calculate the starting point for each sub-image
+                // Calculate the starting point for each sub-image and view it in place
                 int startX = col * subImageWidth;
                 int startY = row * subImageHeight;
+                subImages.add(image.getSubImage(startY, startX, subImageHeight, subImageWidth));
+            }
+        }
+
+        return subImages;
+    }
+
+    /**
+     * Calculates the brightness of every tile of the padded image, as if the image was padded with
+     * {@link #padImage} and divided with {@link #divideToSubImages}. The brightness of each tile is
+     * read from the integral image of the source, and the white padding is accounted for
+     * analytically, so the cost is proportional to the number of tiles once the integral image of
+     * the source has been built.
+     *
+     * @param resolution The number of divisions along each axis.
+     * @param image The image to be divided, before padding.
+     * @return A resolution x resolution grid of normalized brightness values.
+     */
+    public double[][] calculateTileBrightnesses(int resolution, Image image) {
+        double[][] brightnesses = new double[resolution][resolution];
+        for (int row = 0; row < resolution; row++) {
+            calculateTileBrightnessRow(resolution, image, row, brightnesses[row]);
+        }
+        return brightnesses;
+    }
+
+    /**
+     * Calculates the brightness of a single row of tiles of the padded image, as described in
+     * {@link #calculateTileBrightnesses}. Rows are independent of each other, so different rows
+     * may be calculated concurrently.
+     *
+     * @param resolution The number of divisions along each axis.
+     * @param image The image to be divided, before padding.
+     * @param row The row of tiles to calculate.
+     * @param rowBrightnesses An array of length resolution to fill with the normalized brightness values.
+     */
+    public void calculateTileBrightnessRow(int resolution, Image image, int row, double[] rowBrightnesses) {
+        double tileArea = TileGrid.padded(image.getWidth(), image.getHeight(), resolution).getTileArea();
+        long[] rowSums = new long[resolution];
+        calculateTileLumaSumRow(resolution, image, row, rowSums);
+        for (int col = 0; col < resolution; col++) {
+            rowBrightnesses[col] = rowSums[col] / tileArea / IntegralImage.WHITE_LUMA;
+        }
+    }
 
-                // Create a new pixel array for the sub-image
-                Color[][] subImagePixels = new Color[subImageHeight][subImageWidth];
+    /**
+     * Calculates the total fixed point luminance of every tile of a single row of tiles of the padded
+     * image, laid out as in {@link #calculateTileBrightnesses}. The sums are exact, so the sums of a
+     * coarser grid may be derived from them by adding tiles together.
+     *
+     * @param resolution The number of divisions along each axis.
+     * @param image The image to be divided, before padding.
+     * @param row The row of tiles to calculate.
+     * @param rowSums An array of length resolution to fill with the luminance sums, scaled by
+     *                {@link IntegralImage#LUMA_SCALE}, with padding counted as white.
+     */
+    public void calculateTileLumaSumRow(int resolution, Image image, int row, long[] rowSums) {
+        TileGrid grid = TileGrid.padded(image.getWidth(), image.getHeight(), resolution);
+        IntegralImage integral = image.getIntegralImage();
+        for (int col = 0; col < resolution; col++) {
+            rowSums[col] = paddedLumaSum(integral, grid, grid.top(row), grid.left(col),
+                    grid.top(row + 1), grid.left(col + 1));
+        }
+    }
 
-                for (int i = 0; i < subImageHeight; i++) {
-                    for (int j = 0; j < subImageWidth; j++) {
-                        // Copy pixels from the original image to the sub-image
-                        subImagePixels[i][j] = image.getPixel(startY + i, startX + j);
-                    }
+    /**
+     * Calculates the black&white pattern of every tile of a single row of tiles of the padded image,
+     * laid out as in {@link #calculateTileBrightnesses}. Each tile is down-sampled to a square grid of
+     * cells using the integral image of the source, and a cell is set when it is at least as bright as
+     * the tile, matching glyph images where set pixels are the bright background.
+     *
+     * @param resolution The number of divisions along each axis.
+     * @param image The image to be divided, before padding.
+     * @param row The row of tiles to calculate.
+     * @param shapeResolution The number of cells along each axis of a pattern.
+     * @param minContrast The smallest difference of normalized brightness between the brightest and
+     *                    darkest cells for a tile to have a pattern.
+     * @param rowShapes An array of length resolution to fill with the patterns, packed one bit per
+     *                  cell into longs, row by row. Tiles without a pattern are set to null.
+     */
+    public void calculateTileShapeRow(int resolution, Image image, int row, int shapeResolution,
+                                      double minContrast, long[][] rowShapes) {
+        TileGrid grid = TileGrid.padded(image.getWidth(), image.getHeight(), resolution);
+        int subImageWidth = grid.getTileWidth();
+        int subImageHeight = grid.getTileHeight();
+        IntegralImage integral = image.getIntegralImage();
+
+        double[] cellBrightnesses = new double[shapeResolution * shapeResolution];
+        int tileTop = grid.top(row);
+        for (int col = 0; col < resolution; col++) {
+            if (grid.getTileArea() == 0) {
+                rowShapes[col] = null;
+                continue;
+            }
+            int tileLeft = grid.left(col);
+            double tileBrightness = paddedLumaSum(integral, grid, tileTop, tileLeft,
+                    grid.top(row + 1), grid.left(col + 1)) / (double) grid.getTileArea() / IntegralImage.WHITE_LUMA;
+            double minCell = Double.MAX_VALUE;
+            double maxCell = -Double.MAX_VALUE;
+            for (int cellRow = 0; cellRow < shapeResolution; cellRow++) {
+                // Cells are at least one pixel, overlapping when the tile is smaller than the pattern
+                int top = tileTop + cellRow * subImageHeight / shapeResolution;
+                int bottom = Math.max(tileTop + (cellRow + 1) * subImageHeight / shapeResolution, top + 1);
+                for (int cellCol = 0; cellCol < shapeResolution; cellCol++) {
+                    int left = tileLeft + cellCol * subImageWidth / shapeResolution;
+                    int right = Math.max(tileLeft + (cellCol + 1) * subImageWidth / shapeResolution, left + 1);
+                    double cell = paddedLumaSum(integral, grid, top, left, bottom, right)
+                            / ((double) (bottom - top) * (right - left)) / IntegralImage.WHITE_LUMA;
+                    cellBrightnesses[cellRow * shapeResolution + cellCol] = cell;
+                    minCell = Math.min(minCell, cell);
+                    maxCell = Math.max(maxCell, cell);
                 }
-                // Create a new Image object for the sub-image and add it to the list
-                subImages.add(new Image(subImagePixels, subImageWidth, subImageHeight));
             }
+            rowShapes[col] = maxCell - minCell < minContrast ? null : threshold(cellBrightnesses, tileBrightness);
         }
+    }
 
-        return subImages;
+    /**
+     * Returns the number of rows of tiles for adaptive tiling, in which the image is divided into
+     * columns of equal width and rows of the closest height that keeps tiles square.
+     *
+     * @param columns The number of columns of tiles.
+     * @param image   The image to be divided.
+     * @return The number of rows of tiles, at least 1.
+     */
+    public int calculateAdaptiveRows(int columns, Image image) {
+        return Math.max(1, (int) Math.round((double) image.getHeight() * columns / image.getWidth()));
+    }
+
+    /**
+     * Calculates the brightness of every tile of a single row of tiles of the image with adaptive
+     * tiling: the image itself, without padding, is divided into a grid of any size, and tile
+     * bounds may fall inside pixels, which then count towards each tile by the part of their area
+     * inside it. No work is spent on padding, whatever the dimensions of the image.
+     *
+     * @param columns        The number of columns of tiles.
+     * @param rows           The number of rows of tiles.
+     * @param image          The image to be divided.
+     * @param row            The row of tiles to calculate.
+     * @param rowBrightnesses An array of length columns to fill with the normalized brightness values.
+     */
+    public void calculateAdaptiveTileBrightnessRow(int columns, int rows, Image image, int row,
+                                                   double[] rowBrightnesses) {
+        TileGrid grid = TileGrid.adaptive(image.getWidth(), image.getHeight(), columns, rows);
+        IntegralImage integral = image.getIntegralImage();
+        double top = grid.rowEdge(row);
+        double bottom = grid.rowEdge(row + 1);
+        for (int col = 0; col < columns; col++) {
+            double left = grid.columnEdge(col);
+            double right = grid.columnEdge(col + 1);
+            double area = (bottom - top) * (right - left);
+            rowBrightnesses[col] = integral.sum(top, left, bottom, right) / area / IntegralImage.WHITE_LUMA;
+        }
+    }
+
+    /**
+     * Calculates the mean color of every tile of a single row of tiles of the image with adaptive
+     * tiling, laid out as in {@link #calculateAdaptiveTileBrightnessRow}.
+     *
+     * @param columns   The number of columns of tiles.
+     * @param rows      The number of rows of tiles.
+     * @param image     The image to be divided.
+     * @param row       The row of tiles to calculate.
+     * @param rowColors An array of length columns to fill with the packed RGB mean colors.
+     */
+    public void calculateAdaptiveTileColorRow(int columns, int rows, Image image, int row, int[] rowColors) {
+        TileGrid grid = TileGrid.adaptive(image.getWidth(), image.getHeight(), columns, rows);
+        IntegralImage integral = image.getIntegralImage(true);
+        double top = grid.rowEdge(row);
+        double bottom = grid.rowEdge(row + 1);
+        for (int col = 0; col < columns; col++) {
+            double left = grid.columnEdge(col);
+            double right = grid.columnEdge(col + 1);
+            double area = (bottom - top) * (right - left);
+            int rgb = 0;
+            for (int channel = IntegralImage.RED; channel <= IntegralImage.BLUE; channel++) {
+                long mean = Math.round(integral.channelSum(channel, top, left, bottom, right) / area);
+                rgb = (rgb << 8) | (int) Math.max(0, Math.min(255, mean));
+            }
+            rowColors[col] = rgb;
+        }
+    }
+
+    /**
+     * Calculates the black&white pattern of every tile of a single row of tiles of the image with
+     * adaptive tiling, laid out as in {@link #calculateAdaptiveTileBrightnessRow}. Patterns are made
+     * as in {@link #calculateTileShapeRow}, with cells of fractional size.
+     *
+     * @param columns         The number of columns of tiles.
+     * @param rows            The number of rows of tiles.
+     * @param image           The image to be divided.
+     * @param row             The row of tiles to calculate.
+     * @param shapeResolution The number of cells along each axis of a pattern.
+     * @param minContrast     The smallest difference of normalized brightness between the brightest
+     *                        and darkest cells for a tile to have a pattern.
+     * @param rowShapes       An array of length columns to fill with the packed patterns, or null
+     *                        for tiles without a pattern.
+     */
+    public void calculateAdaptiveTileShapeRow(int columns, int rows, Image image, int row,
+                                              int shapeResolution, double minContrast, long[][] rowShapes) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        TileGrid grid = TileGrid.adaptive(width, height, columns, rows);
+        IntegralImage integral = image.getIntegralImage();
+        double[] cellBrightnesses = new double[shapeResolution * shapeResolution];
+        double tileTop = grid.rowEdge(row);
+        double tileHeight = grid.rowEdge(row + 1) - tileTop;
+        for (int col = 0; col < columns; col++) {
+            double tileLeft = grid.columnEdge(col);
+            double tileWidth = grid.columnEdge(col + 1) - tileLeft;
+            double tileBrightness = integral.sum(tileTop, tileLeft, tileTop + tileHeight, tileLeft + tileWidth)
+                    / (tileWidth * tileHeight) / IntegralImage.WHITE_LUMA;
+            double cellWidth = tileWidth / shapeResolution;
+            double cellHeight = tileHeight / shapeResolution;
+            double minCell = Double.MAX_VALUE;
+            double maxCell = -Double.MAX_VALUE;
+            for (int cellRow = 0; cellRow < shapeResolution; cellRow++) {
+                double top = tileTop + cellRow * cellHeight;
+                double bottom = Math.min(top + cellHeight, height);
+                for (int cellCol = 0; cellCol < shapeResolution; cellCol++) {
+                    double left = tileLeft + cellCol * cellWidth;
+                    double right = Math.min(left + cellWidth, width);
+                    double cell = integral.sum(top, left, bottom, right)
+                            / ((bottom - top) * (right - left)) / IntegralImage.WHITE_LUMA;
+                    cellBrightnesses[cellRow * shapeResolution + cellCol] = cell;
+                    minCell = Math.min(minCell, cell);
+                    maxCell = Math.max(maxCell, cell);
+                }
+            }
+            rowShapes[col] = maxCell - minCell < minContrast ? null : threshold(cellBrightnesses, tileBrightness);
+        }
+    }
+
+    // Packs a pattern with a bit set for every cell at least as bright as the tile.
+    private static long[] threshold(double[] cellBrightnesses, double tileBrightness) {
+        long[] shape = new long[(cellBrightnesses.length + Long.SIZE - 1) / Long.SIZE];
+        for (int i = 0; i < cellBrightnesses.length; i++) {
+            if (cellBrightnesses[i] >= tileBrightness) {
+                shape[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+            }
+        }
+        return shape;
+    }
+
+    // Sums the fixed point luminance of a rectangle given in padded coordinates, counting the
+    // part of it outside the source as white padding.
+    private long paddedLumaSum(IntegralImage integral, TileGrid grid, int top, int left, int bottom, int right) {
+        int sourceTop = grid.sourceRow(top);
+        int sourceBottom = grid.sourceRow(bottom);
+        int sourceLeft = grid.sourceColumn(left);
+        int sourceRight = grid.sourceColumn(right);
+        long sourceArea = 0;
+        long total = 0;
+        if (sourceTop < sourceBottom && sourceLeft < sourceRight) {
+            sourceArea = (long) (sourceBottom - sourceTop) * (sourceRight - sourceLeft);
+            total = integral.sum(sourceTop, sourceLeft, sourceBottom, sourceRight);
+        }
+        return total + ((long) (bottom - top) * (right - left) - sourceArea) * IntegralImage.WHITE_LUMA;
+    }
+
+    /**
+     * Calculates the mean color of a single row of tiles of the padded image, laid out as in
+     * {@link #calculateTileBrightnesses}. The colors are read from the color tables of the source's
+     * integral image, with the white padding accounted for analytically.
+     *
+     * @param resolution The number of divisions along each axis.
+     * @param image The image to be divided, before padding.
+     * @param row The row of tiles to calculate.
+     * @param rowColors An array of length resolution to fill with the packed RGB mean colors.
+     */
+    public void calculateTileColorRow(int resolution, Image image, int row, int[] rowColors) {
+        TileGrid grid = TileGrid.padded(image.getWidth(), image.getHeight(), resolution);
+        long tileArea = grid.getTileArea();
+        IntegralImage integral = image.getIntegralImage(true);
+
+        int top = grid.sourceRow(grid.top(row));
+        int bottom = grid.sourceRow(grid.top(row + 1));
+        for (int col = 0; col < resolution; col++) {
+            int left = grid.sourceColumn(grid.left(col));
+            int right = grid.sourceColumn(grid.left(col + 1));
+            long sourceArea = top < bottom && left < right ? (long) (bottom - top) * (right - left) : 0;
+            int rgb = 0;
+            for (int channel = IntegralImage.RED; channel <= IntegralImage.BLUE; channel++) {
+                long total = sourceArea == 0 ? 0 : integral.channelSum(channel, top, left, bottom, right);
+                // Every pixel of the tile outside the source is white padding
+                total += (tileArea - sourceArea) * 255;
+                int mean = tileArea == 0 ? 255 : (int) ((total + tileArea / 2) / tileArea);
+                rgb = (rgb << 8) | mean;
+            }
+            rowColors[col] = rgb;
+        }
     }
 
     /**
      * Pads an image to ensure its width and height are powers of two, which is often
-     * required for certain processing techniques.
+     * required for certain processing techniques. The padding is virtual: the returned image
+     * maps its coordinates onto the original and reads white outside of it, so nothing is copied.
      *
      * @param image The image to be padded.
-     * @return A new image that has been padded to meet the dimension requirements.
+     * @return An image that has been padded to meet the dimension requirements.
      */
     public Image padImage(Image image){
         int width = image.getWidth();
         int height = image.getHeight();
         int newWidth = calculateDimension(width);
         int newHeight = calculateDimension(height);
-        Color[][] newPixelArray = new Color[newHeight][newWidth];
+        if (newWidth == width && newHeight == height) {
+            return image;
+        }
         int xPadding = (newWidth - width) / 2;
         int yPadding = (newHeight - height) / 2;
-
-        for (int i = 0; i < newHeight; i++) {
-            for (int j = 0; j < newWidth; j++) {
-                if (i < yPadding || i >= yPadding + height || j < xPadding || j >= xPadding + width) {
-                    newPixelArray[i][j] = new Color(255, 255, 255);
-                } else {
-                    newPixelArray[i][j] = image.getPixel(i - yPadding, j - xPadding);
-                }
-            }
-        }
-        return new Image(newPixelArray, newWidth, newHeight);
+        return new PaddedImage(image, newWidth, newHeight, xPadding, yPadding);
     }
 
     /**
@@ -108,7 +366,7 @@ public class ImageUtils {
      * @param oldDimension The original dimension (width or height) of the image.
      * @return The calculated dimension as a power of two.
      */
-    private int calculateDimension(int oldDimension) {
+    public int calculateDimension(int oldDimension) {
         int powerOfTwo = 1;
         while (powerOfTwo < oldDimension) {
             powerOfTwo *= 2;
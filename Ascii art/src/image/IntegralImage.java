@@ -0,0 +1,266 @@
+package image;
+
+/**
+ * A summed-area table of the luminance of an image. It is built in a single pass over the pixels,
+ * after which the total luminance of any axis-aligned rectangle can be read in constant time.
+ * Luminance is accumulated in fixed point, so sums are exact regardless of the rectangle size.
+ * Optionally, tables of the red, green and blue channels are built in the same pass, so the mean
+ * color of any rectangle can be read in constant time as well; they can also be added later to a
+ * table built without them, without recomputing its luminance.
+ * Rectangles may also have fractional bounds, in which case pixels cut by a bound are weighted by
+ * the part of their area inside it.
+ * <p>
+ * Because the sums are exact, a tile whose mean brightness lies exactly halfway between two characters
+ * is matched by the tie rule of {@link image_char_matching.SubImgCharMatcher}, which picks the lower
+ * character. The floating point scan this table replaced accumulated rounding error that could land
+ * such a tile on either side of the tie, so renders can differ from that scan's on exact ties, and
+ * only there. This is intended: the exact value does not depend on the order pixels are summed in.
+ */
+public class IntegralImage {
+
+    /**
+     * The factor by which fixed point luminance values are scaled relative to the 0-255 scale.
+     */
+    public static final int LUMA_SCALE = 10000;
+
+    /**
+     * The fixed point luminance of a white pixel.
+     */
+    public static final long WHITE_LUMA = 255L * LUMA_SCALE;
+
+    static final int RED_LUMA_WEIGHT = 2126;
+    static final int GREEN_LUMA_WEIGHT = 7152;
+    static final int BLUE_LUMA_WEIGHT = 722;
+
+    /**
+     * The index of the red channel, for {@link #channelSum}.
+     */
+    public static final int RED = 0;
+
+    /**
+     * The index of the green channel, for {@link #channelSum}.
+     */
+    public static final int GREEN = 1;
+
+    /**
+     * The index of the blue channel, for {@link #channelSum}.
+     */
+    public static final int BLUE = 2;
+
+    private static final int CHANNELS = 3;
+
+    private final long[] table;
+    private final long[][] channelTables;
+    private final int width;
+    private final int height;
+
+    /**
+     * Builds the summed-area table of an image.
+     *
+     * @param image The image to build the table for.
+     */
+    public IntegralImage(Image image) {
+        this(image, false);
+    }
+
+    /**
+     * Builds the summed-area table of an image, optionally with tables of its color channels.
+     *
+     * @param image     The image to build the table for.
+     * @param withColor Whether to build the tables of the red, green and blue channels as well.
+     */
+    public IntegralImage(Image image, boolean withColor) {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        int stride = width + 1;
+        this.table = new long[stride * (height + 1)];
+        this.channelTables = withColor ? new long[CHANNELS][stride * (height + 1)] : null;
+        int[] lumaRow = new int[width];
+        for (int i = 0; i < height; i++) {
+            image.fixedLumaRow(i, lumaRow);
+            long rowSum = 0;
+            int above = i * stride;
+            int current = above + stride;
+            for (int j = 0; j < width; j++) {
+                rowSum += lumaRow[j];
+                table[current + j + 1] = table[above + j + 1] + rowSum;
+            }
+            if (withColor) {
+                addChannelRow(image, i, channelTables);
+            }
+        }
+    }
+
+    // Shares the luminance table of a table built without color, adding the tables of the color channels.
+    private IntegralImage(IntegralImage luma, Image image) {
+        this.width = luma.width;
+        this.height = luma.height;
+        this.table = luma.table;
+        this.channelTables = new long[CHANNELS][(width + 1) * (height + 1)];
+        for (int i = 0; i < height; i++) {
+            addChannelRow(image, i, channelTables);
+        }
+    }
+
+    /**
+     * Returns a table of the same image with the tables of its color channels. If this table has
+     * none, they are built in a pass over the pixels that reuses, rather than recomputes, its
+     * luminance table.
+     *
+     * @param image The image this table was built for.
+     * @return This table if it has color, otherwise a table sharing its luminance table.
+     */
+    public IntegralImage withColor(Image image) {
+        return hasColor() ? this : new IntegralImage(this, image);
+    }
+
+    // Fills one row of the tables of the color channels, from the row above it.
+    private static void addChannelRow(Image image, int row, long[][] channelTables) {
+        int width = image.getWidth();
+        int above = row * (width + 1);
+        int current = above + width + 1;
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        long[] redTable = channelTables[RED];
+        long[] greenTable = channelTables[GREEN];
+        long[] blueTable = channelTables[BLUE];
+        for (int j = 0; j < width; j++) {
+            int rgb = image.getRGB(row, j);
+            red += (rgb >> 16) & 0xFF;
+            green += (rgb >> 8) & 0xFF;
+            blue += rgb & 0xFF;
+            redTable[current + j + 1] = redTable[above + j + 1] + red;
+            greenTable[current + j + 1] = greenTable[above + j + 1] + green;
+            blueTable[current + j + 1] = blueTable[above + j + 1] + blue;
+        }
+    }
+
+    /**
+     * Computes the fixed point luminance of a packed RGB value.
+     *
+     * @param rgb The packed RGB value.
+     * @return The luminance, scaled by {@link #LUMA_SCALE}.
+     */
+    public static int fixedLuma(int rgb) {
+        return ((rgb >> 16) & 0xFF) * RED_LUMA_WEIGHT + ((rgb >> 8) & 0xFF) * GREEN_LUMA_WEIGHT
+                + (rgb & 0xFF) * BLUE_LUMA_WEIGHT;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the total fixed point luminance of a rectangle of the image.
+     *
+     * @param top    The first row of the rectangle.
+     * @param left   The first column of the rectangle.
+     * @param bottom The row after the last row of the rectangle.
+     * @param right  The column after the last column of the rectangle.
+     * @return The sum of the luminance of the pixels in the rectangle, scaled by {@link #LUMA_SCALE}.
+     */
+    public long sum(int top, int left, int bottom, int right) {
+        int stride = width + 1;
+        return table[bottom * stride + right] - table[top * stride + right]
+                - table[bottom * stride + left] + table[top * stride + left];
+    }
+
+    /**
+     * Returns the total fixed point luminance of a rectangle with fractional bounds, weighting each
+     * pixel by the part of its area inside the rectangle. Pixels are uniform squares, over each of
+     * which the table grows bilinearly, so interpolating the table gives the exact weighted sum.
+     *
+     * @param top    The top edge of the rectangle, between 0 and the height.
+     * @param left   The left edge of the rectangle, between 0 and the width.
+     * @param bottom The bottom edge of the rectangle, between top and the height.
+     * @param right  The right edge of the rectangle, between left and the width.
+     * @return The area weighted sum of the luminance, scaled by {@link #LUMA_SCALE}.
+     */
+    public double sum(double top, double left, double bottom, double right) {
+        return interpolatedSum(table, top, left, bottom, right);
+    }
+
+    /**
+     * Returns whether the tables of the color channels were built.
+     *
+     * @return True if {@link #channelSum} may be called.
+     */
+    public boolean hasColor() {
+        return channelTables != null;
+    }
+
+    /**
+     * Returns the total of one color channel over a rectangle of the image.
+     *
+     * @param channel One of {@link #RED}, {@link #GREEN} and {@link #BLUE}.
+     * @param top     The first row of the rectangle.
+     * @param left    The first column of the rectangle.
+     * @param bottom  The row after the last row of the rectangle.
+     * @param right   The column after the last column of the rectangle.
+     * @return The sum of the channel, on a 0-255 scale per pixel, over the pixels in the rectangle.
+     */
+    public long channelSum(int channel, int top, int left, int bottom, int right) {
+        if (channelTables == null) {
+            throw new IllegalStateException("The integral image was built without color.");
+        }
+        long[] channelTable = channelTables[channel];
+        int stride = width + 1;
+        return channelTable[bottom * stride + right] - channelTable[top * stride + right]
+                - channelTable[bottom * stride + left] + channelTable[top * stride + left];
+    }
+
+    /**
+     * Returns the total of one color channel over a rectangle with fractional bounds, weighting each
+     * pixel by the part of its area inside the rectangle, as {@link #sum(double, double, double, double)}.
+     *
+     * @param channel One of {@link #RED}, {@link #GREEN} and {@link #BLUE}.
+     * @param top     The top edge of the rectangle, between 0 and the height.
+     * @param left    The left edge of the rectangle, between 0 and the width.
+     * @param bottom  The bottom edge of the rectangle, between top and the height.
+     * @param right   The right edge of the rectangle, between left and the width.
+     * @return The area weighted sum of the channel, on a 0-255 scale per pixel.
+     */
+    public double channelSum(int channel, double top, double left, double bottom, double right) {
+        if (channelTables == null) {
+            throw new IllegalStateException("The integral image was built without color.");
+        }
+        return interpolatedSum(channelTables[channel], top, left, bottom, right);
+    }
+
+    /**
+     * Returns the normalized mean brightness of a rectangle of the image.
+     *
+     * @param top    The first row of the rectangle.
+     * @param left   The first column of the rectangle.
+     * @param bottom The row after the last row of the rectangle.
+     * @param right  The column after the last column of the rectangle.
+     * @return The average brightness of the rectangle, normalized to a 0-1 scale.
+     */
+    public double meanBrightness(int top, int left, int bottom, int right) {
+        double area = (double) (bottom - top) * (right - left);
+        return sum(top, left, bottom, right) / area / WHITE_LUMA;
+    }
+
+    private double interpolatedSum(long[] sums, double top, double left, double bottom, double right) {
+        return interpolate(sums, bottom, right) - interpolate(sums, top, right)
+                - interpolate(sums, bottom, left) + interpolate(sums, top, left);
+    }
+
+    // Reads a table at a fractional position, interpolating between the four surrounding entries.
+    private double interpolate(long[] sums, double y, double x) {
+        int stride = width + 1;
+        int i = Math.min((int) y, height - 1);
+        int j = Math.min((int) x, width - 1);
+        double fy = y - i;
+        double fx = x - j;
+        int index = i * stride + j;
+        double upper = sums[index] + (sums[index + 1] - sums[index]) * fx;
+        double lower = sums[index + stride] + (sums[index + stride + 1] - sums[index + stride]) * fx;
+        return upper + (lower - upper) * fy;
+    }
+}
@@ -0,0 +1,44 @@
+package image;
+
+import java.util.logging.Logger;
+
+/**
+ * Computes the fixed point luminance of a run of packed RGB pixels, the innermost loop of building
+ * an integral image and of summing the luminance of an image.
+ * Two implementations exist: a scalar loop, and a SIMD one using the incubating Vector API. The SIMD
+ * one lives in the separate source root {@code src-vector}, compiled onto the same class path with
+ * {@code --add-modules jdk.incubator.vector}, and is only usable when the program runs with that flag
+ * too. It is selected when it can be loaded, unless the system property {@code ascii_art.vectorLuma}
+ * is false, so building {@code src} alone gives the scalar one.
+ * Both work in integers, so they give exactly the same results.
+ */
+interface LumaKernel {
+
+    /**
+     * The implementation selected for this run.
+     */
+    LumaKernel INSTANCE = select();
+
+    /**
+     * Computes the fixed point luminance of consecutive pixels, as {@link IntegralImage#fixedLuma}.
+     *
+     * @param pixels The packed RGB pixels.
+     * @param from   The index of the first pixel.
+     * @param luma   The array to write the luminance values to, starting at index 0.
+     * @param length The number of pixels.
+     */
+    void fixedLuma(int[] pixels, int from, int[] luma, int length);
+
+    private static LumaKernel select() {
+        if (Boolean.parseBoolean(System.getProperty("ascii_art.vectorLuma", "true"))) {
+            try {
+                return (LumaKernel) Class.forName("image.VectorLumaKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // compiled without the Vector API, or the module was not added at run time
+                Logger.getGlobal().fine("Vector API unavailable, using scalar luminance: " + e);
+            }
+        }
+        return new ScalarLumaKernel();
+    }
+}
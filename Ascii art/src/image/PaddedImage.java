@@ -0,0 +1,71 @@
+package image;
+
+import java.awt.*;
+
+/**
+ * An image surrounded by a white border, computed on the fly instead of being materialised.
+ * Reads inside the wrapped source are forwarded to it, and reads of the border return white.
+ * Sub-images of a padded image are themselves padded views of the same source, so tiles that
+ * straddle the border never copy pixels either.
+ */
+class PaddedImage extends Image {
+
+    private static final int WHITE_RGB = Color.WHITE.getRGB();
+    private static final double WHITE_LUMA = luma(WHITE_RGB);
+
+    private final Image source;
+    private final int xPadding;
+    private final int yPadding;
+
+    /**
+     * Constructs a padded view of an image.
+     *
+     * @param source   The image to pad.
+     * @param width    The width of the padded image.
+     * @param height   The height of the padded image.
+     * @param xPadding The column of this image at which the source starts. May be negative.
+     * @param yPadding The row of this image at which the source starts. May be negative.
+     */
+    PaddedImage(Image source, int width, int height, int xPadding, int yPadding) {
+        super(width, height);
+        this.source = source;
+        this.xPadding = xPadding;
+        this.yPadding = yPadding;
+    }
+
+    @Override
+    public int getRGB(int row, int col) {
+        int sourceRow = row - yPadding;
+        int sourceCol = col - xPadding;
+        if (sourceRow < 0 || sourceRow >= source.getHeight()
+                || sourceCol < 0 || sourceCol >= source.getWidth()) {
+            return WHITE_RGB;
+        }
+        return source.getRGB(sourceRow, sourceCol);
+    }
+
+    @Override
+    public Image getSubImage(int row, int col, int height, int width) {
+        if (row < 0 || col < 0 || height < 0 || width < 0
+                || row + height > getHeight() || col + width > getWidth()) {
+            throw new IndexOutOfBoundsException("Sub-image exceeds the bounds of the image.");
+        }
+        return new PaddedImage(source, width, height, xPadding - col, yPadding - row);
+    }
+
+    @Override
+    double totalLuma() {
+        // Only the part that overlaps the source is scanned, the border is all white
+        int top = Math.max(-yPadding, 0);
+        int bottom = Math.min(getHeight() - yPadding, source.getHeight());
+        int left = Math.max(-xPadding, 0);
+        int right = Math.min(getWidth() - xPadding, source.getWidth());
+        double total = 0;
+        long sourceArea = 0;
+        if (top < bottom && left < right) {
+            total = source.getSubImage(top, left, bottom - top, right - left).totalLuma();
+            sourceArea = (long) (bottom - top) * (right - left);
+        }
+        return total + ((long) getWidth() * getHeight() - sourceArea) * WHITE_LUMA;
+    }
+}
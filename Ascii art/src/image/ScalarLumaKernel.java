@@ -0,0 +1,14 @@
+package image;
+
+/**
+ * Computes fixed point luminance one pixel at a time, for when the Vector API is unavailable.
+ */
+class ScalarLumaKernel implements LumaKernel {
+
+    @Override
+    public void fixedLuma(int[] pixels, int from, int[] luma, int length) {
+        for (int i = 0; i < length; i++) {
+            luma[i] = IntegralImage.fixedLuma(pixels[from + i]);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package image;
+
+/**
+ * The geometry of a grid of tiles over an image, shared by every calculation that reads tiles, so
+ * they all divide the image the same way.
+ * With padded tiling, the image is centered in white padding up to powers of two, as by
+ * {@link ImageUtils#padImage}, and divided into tiles of whole pixels; tile edges are given in the
+ * coordinates of the padded image and may be mapped onto the rows and columns of the source.
+ * With adaptive tiling, the image itself is divided, and tile edges may fall inside pixels.
+ */
+public final class TileGrid {
+
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final int rows;
+    private final int paddedWidth;
+    private final int paddedHeight;
+    private final int xPadding;
+    private final int yPadding;
+
+    private TileGrid(int width, int height, int columns, int rows, int paddedWidth, int paddedHeight) {
+        this.width = width;
+        this.height = height;
+        this.columns = columns;
+        this.rows = rows;
+        this.paddedWidth = paddedWidth;
+        this.paddedHeight = paddedHeight;
+        this.xPadding = (paddedWidth - width) / 2;
+        this.yPadding = (paddedHeight - height) / 2;
+    }
+
+    /**
+     * Creates the grid of padded tiling.
+     *
+     * @param width      The width of the image, before padding.
+     * @param height     The height of the image, before padding.
+     * @param resolution The number of divisions along each axis.
+     * @return The grid.
+     */
+    public static TileGrid padded(int width, int height, int resolution) {
+        ImageUtils utils = new ImageUtils();
+        return new TileGrid(width, height, resolution, resolution,
+                utils.calculateDimension(width), utils.calculateDimension(height));
+    }
+
+    /**
+     * Creates the grid of adaptive tiling, which has no padding.
+     *
+     * @param width   The width of the image.
+     * @param height  The height of the image.
+     * @param columns The number of columns of tiles.
+     * @param rows    The number of rows of tiles.
+     * @return The grid.
+     */
+    public static TileGrid adaptive(int width, int height, int columns, int rows) {
+        return new TileGrid(width, height, columns, rows, width, height);
+    }
+
+    public int getPaddedWidth() {
+        return paddedWidth;
+    }
+
+    public int getPaddedHeight() {
+        return paddedHeight;
+    }
+
+    /**
+     * Returns the width of the tiles of padded tiling.
+     *
+     * @return The width in pixels, 0 if there are more columns than padded pixels.
+     */
+    public int getTileWidth() {
+        return paddedWidth / columns;
+    }
+
+    /**
+     * Returns the height of the tiles of padded tiling.
+     *
+     * @return The height in pixels, 0 if there are more rows than padded pixels.
+     */
+    public int getTileHeight() {
+        return paddedHeight / rows;
+    }
+
+    /**
+     * Returns the number of pixels in each tile of padded tiling.
+     *
+     * @return The tile width times the tile height.
+     */
+    public long getTileArea() {
+        return (long) getTileWidth() * getTileHeight();
+    }
+
+    /**
+     * Returns the first row of padded pixels of a row of tiles of padded tiling.
+     *
+     * @param row The row of tiles, up to the number of rows for the bottom edge of the grid.
+     * @return The row in the coordinates of the padded image.
+     */
+    public int top(int row) {
+        return row * getTileHeight();
+    }
+
+    /**
+     * Returns the first column of padded pixels of a column of tiles of padded tiling.
+     *
+     * @param col The column of tiles, up to the number of columns for the right edge of the grid.
+     * @return The column in the coordinates of the padded image.
+     */
+    public int left(int col) {
+        return col * getTileWidth();
+    }
+
+    /**
+     * Maps a row of the padded image onto the source, clipping it to the source's edges.
+     *
+     * @param paddedRow A row in the coordinates of the padded image.
+     * @return The row of the source, between 0 and the height of the source.
+     */
+    public int sourceRow(int paddedRow) {
+        return Math.max(Math.min(paddedRow - yPadding, height), 0);
+    }
+
+    /**
+     * Maps a column of the padded image onto the source, clipping it to the source's edges.
+     *
+     * @param paddedColumn A column in the coordinates of the padded image.
+     * @return The column of the source, between 0 and the width of the source.
+     */
+    public int sourceColumn(int paddedColumn) {
+        return Math.max(Math.min(paddedColumn - xPadding, width), 0);
+    }
+
+    /**
+     * Returns the top edge of a row of tiles of adaptive tiling.
+     *
+     * @param row The row of tiles, up to the number of rows for the bottom edge of the grid.
+     * @return The edge in the coordinates of the image, which may fall inside a pixel.
+     */
+    public double rowEdge(int row) {
+        return (double) row * height / rows;
+    }
+
+    /**
+     * Returns the left edge of a column of tiles of adaptive tiling.
+     *
+     * @param col The column of tiles, up to the number of columns for the right edge of the grid.
+     * @return The edge in the coordinates of the image, which may fall inside a pixel.
+     */
+    public double columnEdge(int col) {
+        return (double) col * width / columns;
+    }
+}
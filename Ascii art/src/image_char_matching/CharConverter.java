@@ -2,6 +2,14 @@ package image_char_matching;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
 
 /**
  * Inspired by, and partly copied from
@@ -10,6 +18,11 @@ import java.awt.image.BufferedImage;
  * https://dzone.com/articles/ascii-art-generator-java
  * Adaptations made by Dan Nirel and again by Rachel Behar.
  * The class converts characters to a binary "image" (2D array of booleans).
+ * Rendered glyphs are kept in a process-wide, thread-safe cache keyed by character, font and
+ * resolution, so each glyph is rasterised at most once. The cache is backed by an on-disk
+ * {@link GlyphMetricsStore} per font and resolution, in the directory named by the
+ * "ascii_art.glyphStoreDir" system property (by default ".ascii_art" in the user's home), so
+ * glyphs saved by a previous process are not rasterised again either.
  */
 public class CharConverter {
     private static final double X_OFFSET_FACTOR = 0.2;
@@ -17,20 +30,120 @@ public class CharConverter {
     private static final String FONT_NAME = "Courier New";
     public static final int DEFAULT_PIXEL_RESOLUTION = 16;
 
+    private static final String GLYPH_STORE_DIR_PROPERTY = "ascii_art.glyphStoreDir";
+
+    private static final ConcurrentHashMap<GlyphKey, Glyph> GLYPH_CACHE = new ConcurrentHashMap<>();
+    // Stores are keyed like glyphs, with the character left as 0
+    private static final ConcurrentHashMap<GlyphKey, GlyphMetricsStore> GLYPH_STORES =
+            new ConcurrentHashMap<>();
+
     /**
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
      */
     public static boolean[][] convertToBoolArray(char c) {
-        BufferedImage img = getBufferedImage(c, FONT_NAME, DEFAULT_PIXEL_RESOLUTION);
-        boolean[][] matrix = new boolean[DEFAULT_PIXEL_RESOLUTION][DEFAULT_PIXEL_RESOLUTION];
-        for(int y = 0 ; y < DEFAULT_PIXEL_RESOLUTION ; y++) {
-            for(int x = 0 ; x < DEFAULT_PIXEL_RESOLUTION ; x++) {
+        return convertToBoolArray(c, FONT_NAME, DEFAULT_PIXEL_RESOLUTION);
+    }
+
+    /**
+     * Renders a given character in the given font to a square black&white image
+     * (2D array of booleans) of the given dimension in pixels.
+     * The returned array is a copy, so callers may modify it freely.
+     */
+    public static boolean[][] convertToBoolArray(char c, String fontName, int pixelResolution) {
+        boolean[][] bitmap = getGlyph(c, fontName, pixelResolution).getBitmap();
+        boolean[][] copy = new boolean[pixelResolution][];
+        for (int y = 0; y < pixelResolution; y++) {
+            copy[y] = bitmap[y].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the black&white image of a given character, in the default font and resolution,
+     * packed one bit per pixel into longs, row by row. The returned array is a copy.
+     */
+    public static long[] getPackedBitmap(char c) {
+        return getGlyph(c, FONT_NAME, DEFAULT_PIXEL_RESOLUTION).getPackedBitmap().clone();
+    }
+
+    /**
+     * Returns the number of set pixels in the black&white image of a given character,
+     * in the default font and resolution.
+     */
+    public static int getPixelCount(char c) {
+        return getPixelCount(c, FONT_NAME, DEFAULT_PIXEL_RESOLUTION);
+    }
+
+    /**
+     * Returns the number of set pixels in the black&white image of a given character,
+     * in the given font and resolution.
+     */
+    public static int getPixelCount(char c, String fontName, int pixelResolution) {
+        return getGlyph(c, fontName, pixelResolution).getPixelCount();
+    }
+
+    /**
+     * Saves every glyph rendered by this process to the on-disk stores, so that later processes
+     * can load them instead of rasterising them. Failures are logged and otherwise ignored.
+     */
+    public static void saveGlyphMetrics() {
+        Map<GlyphKey, Map<Character, Glyph>> glyphsByStore = new HashMap<>();
+        for (Map.Entry<GlyphKey, Glyph> entry : GLYPH_CACHE.entrySet()) {
+            GlyphKey key = entry.getKey();
+            glyphsByStore.computeIfAbsent(new GlyphKey((char) 0, key.fontName, key.pixelResolution),
+                    storeKey -> new HashMap<>()).put(key.c, entry.getValue());
+        }
+        for (Map.Entry<GlyphKey, Map<Character, Glyph>> entry : glyphsByStore.entrySet()) {
+            GlyphKey storeKey = entry.getKey();
+            try {
+                getStore(storeKey).save(entry.getValue());
+            } catch (IOException e) {
+                Logger.getGlobal().warning(String.format("Failed to save glyphs of \"%s\"",
+                        storeKey.fontName));
+            }
+        }
+    }
+
+    private static Glyph getGlyph(char c, String fontName, int pixelResolution) {
+        return GLYPH_CACHE.computeIfAbsent(new GlyphKey(c, fontName, pixelResolution), key -> {
+            Glyph stored = getStore(new GlyphKey((char) 0, fontName, pixelResolution)).find(c);
+            return stored != null ? stored : renderGlyph(c, fontName, pixelResolution);
+        });
+    }
+
+    private static GlyphMetricsStore getStore(GlyphKey storeKey) {
+        return GLYPH_STORES.computeIfAbsent(storeKey, key -> {
+            String directory = System.getProperty(GLYPH_STORE_DIR_PROPERTY,
+                    Paths.get(System.getProperty("user.home"), ".ascii_art").toString());
+            String fileName = String.format("glyphs-%s-%d.bin",
+                    key.fontName.replaceAll("[^A-Za-z0-9]", "_"), key.pixelResolution);
+            Path path = Paths.get(directory, fileName);
+            return GlyphMetricsStore.open(path, fontFingerprint(key.fontName, key.pixelResolution),
+                    key.pixelResolution);
+        });
+    }
+
+    // Identifies the font actually installed under a name, the layout of glyphs and the rasteriser.
+    private static long fontFingerprint(String fontName, int pixelsPerRow) {
+        Font font = new Font(fontName, Font.PLAIN, pixelsPerRow);
+        return Objects.hash(font.getFontName(), font.getFamily(), font.getPSName(),
+                font.getNumGlyphs(), font.getItalicAngle(), pixelsPerRow,
+                X_OFFSET_FACTOR, Y_OFFSET_FACTOR) & 0xFFFFFFFFL
+                | (long) Objects.hash(System.getProperty("java.vendor"),
+                System.getProperty("java.version"), System.getProperty("os.name")) << 32;
+    }
+
+    private static Glyph renderGlyph(char c, String fontName, int pixelResolution) {
+        BufferedImage img = getBufferedImage(c, fontName, pixelResolution);
+        boolean[][] matrix = new boolean[pixelResolution][pixelResolution];
+        for(int y = 0 ; y < pixelResolution ; y++) {
+            for(int x = 0 ; x < pixelResolution ; x++) {
                 matrix[y][x] = img.getRGB(x, y) == 0; //is the color black
             }
         }
-        return matrix;
+        return new Glyph(matrix);
     }
 
     private static BufferedImage getBufferedImage(char c, String fontName, int pixelsPerRow) {
@@ -45,4 +158,29 @@ public class CharConverter {
         return img;
     }
 
+    private static final class GlyphKey {
+        private final char c;
+        private final String fontName;
+        private final int pixelResolution;
+
+        private GlyphKey(char c, String fontName, int pixelResolution) {
+            this.c = c;
+            this.fontName = fontName;
+            this.pixelResolution = pixelResolution;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof GlyphKey)) return false;
+            GlyphKey other = (GlyphKey) o;
+            return c == other.c && pixelResolution == other.pixelResolution
+                    && fontName.equals(other.fontName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(c, fontName, pixelResolution);
+        }
+    }
 }
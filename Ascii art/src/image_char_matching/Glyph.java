@@ -0,0 +1,55 @@
+package image_char_matching;
+
+/**
+ * A rendered character: its black&white image, the same image packed one bit per pixel into longs
+ * (bit i of the image is pixel (i / dimension, i % dimension), row by row), and the number of set pixels.
+ * Instances are never modified after construction, so they can be shared between threads.
+ */
+class Glyph {
+    private final boolean[][] bitmap;
+    private final long[] packedBitmap;
+    private final int pixelCount;
+
+    /**
+     * Constructs a glyph, counting the set pixels of its image.
+     *
+     * @param bitmap The black&white image of the character.
+     */
+    Glyph(boolean[][] bitmap) {
+        int count = 0;
+        for (boolean[] row : bitmap) {
+            for (boolean pixel : row) {
+                if (pixel) {
+                    count++;
+                }
+            }
+        }
+        this.bitmap = bitmap;
+        this.packedBitmap = pack(bitmap);
+        this.pixelCount = count;
+    }
+
+    // Packs a square black&white image one bit per pixel, row by row.
+    private static long[] pack(boolean[][] bitmap) {
+        int dimension = bitmap.length;
+        long[] words = new long[(dimension * dimension + Long.SIZE - 1) / Long.SIZE];
+        for (int i = 0; i < dimension * dimension; i++) {
+            if (bitmap[i / dimension][i % dimension]) {
+                words[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+            }
+        }
+        return words;
+    }
+
+    boolean[][] getBitmap() {
+        return bitmap;
+    }
+
+    long[] getPackedBitmap() {
+        return packedBitmap;
+    }
+
+    int getPixelCount() {
+        return pixelCount;
+    }
+}
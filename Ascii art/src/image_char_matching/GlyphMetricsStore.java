@@ -0,0 +1,168 @@
+package image_char_matching;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * A compact binary file of precomputed glyphs for one font and resolution, so that a fresh process
+ * does not have to rasterise every character again. The file is memory-mapped when opened and
+ * glyphs are looked up in place by binary search. A fingerprint of the font is stored in the header,
+ * and a file whose fingerprint does not match the installed font is ignored.
+ * <p>
+ * Layout: a header of magic, version, fingerprint, pixel resolution and entry count, followed by
+ * entries sorted by character. Each entry holds the character and its image packed one bit per pixel,
+ * row by row, into longs.
+ */
+class GlyphMetricsStore {
+    private static final int MAGIC = 0x47_4C_59_46; // "GLYF"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES + Integer.BYTES * 2;
+
+    private final Path path;
+    private final long fingerprint;
+    private final int pixelResolution;
+    private final int wordsPerGlyph;
+    private final int entryBytes;
+    private final ByteBuffer entries;
+    private final int entryCount;
+
+    private GlyphMetricsStore(Path path, long fingerprint, int pixelResolution, ByteBuffer entries,
+                              int entryCount) {
+        this.path = path;
+        this.fingerprint = fingerprint;
+        this.pixelResolution = pixelResolution;
+        this.wordsPerGlyph = (pixelResolution * pixelResolution + Long.SIZE - 1) / Long.SIZE;
+        this.entryBytes = Character.BYTES + wordsPerGlyph * Long.BYTES;
+        this.entries = entries;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * Opens the store at the given path, mapping it into memory. A missing, corrupt or stale
+     * file yields an empty store that will overwrite it when saved.
+     *
+     * @param path            The file of the store.
+     * @param fingerprint     The fingerprint of the font the glyphs must have been rendered with.
+     * @param pixelResolution The dimension in pixels of the glyph images.
+     * @return The opened store.
+     */
+    static GlyphMetricsStore open(Path path, long fingerprint, int pixelResolution) {
+        GlyphMetricsStore empty = new GlyphMetricsStore(path, fingerprint, pixelResolution,
+                ByteBuffer.allocate(0), 0);
+        if (!Files.isRegularFile(path)) {
+            return empty;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                return empty;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int entryCount = buffer.getInt(Integer.BYTES * 2 + Long.BYTES + Integer.BYTES);
+            boolean valid = buffer.getInt(0) == MAGIC
+                    && buffer.getInt(Integer.BYTES) == VERSION
+                    && buffer.getLong(Integer.BYTES * 2) == fingerprint
+                    && buffer.getInt(Integer.BYTES * 2 + Long.BYTES) == pixelResolution
+                    && entryCount >= 0
+                    && size == HEADER_BYTES + (long) entryCount * empty.entryBytes;
+            if (!valid) {
+                return empty;
+            }
+            ByteBuffer entries = buffer.position(HEADER_BYTES).slice();
+            return new GlyphMetricsStore(path, fingerprint, pixelResolution, entries, entryCount);
+        } catch (IOException e) {
+            Logger.getGlobal().warning(String.format("Failed to read glyph store \"%s\"", path));
+            return empty;
+        }
+    }
+
+    /**
+     * Looks up a glyph in the store.
+     *
+     * @param c The character to look up.
+     * @return The stored glyph, or null if the character is not in the store.
+     */
+    Glyph find(char c) {
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = entries.getChar(mid * entryBytes);
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return readGlyph(mid);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the stored glyphs together with the given ones to the file of the store.
+     * The file is replaced atomically where the file system allows it.
+     *
+     * @param glyphs Glyphs to add to the store, by character.
+     * @throws IOException If the file could not be written.
+     */
+    void save(Map<Character, Glyph> glyphs) throws IOException {
+        TreeMap<Character, Glyph> merged = new TreeMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            merged.put(entries.getChar(i * entryBytes), readGlyph(i));
+        }
+        merged.putAll(glyphs);
+        if (merged.size() == entryCount) {
+            return;
+        }
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(pixelResolution);
+            out.writeInt(merged.size());
+            for (Map.Entry<Character, Glyph> entry : merged.entrySet()) {
+                out.writeChar(entry.getKey());
+                for (long word : entry.getValue().getPackedBitmap()) {
+                    out.writeLong(word);
+                }
+            }
+        }
+        try {
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private Glyph readGlyph(int index) {
+        int offset = index * entryBytes + Character.BYTES;
+        boolean[][] bitmap = new boolean[pixelResolution][pixelResolution];
+        for (int i = 0; i < pixelResolution * pixelResolution; i++) {
+            long word = entries.getLong(offset + (i / Long.SIZE) * Long.BYTES);
+            bitmap[i / pixelResolution][i % pixelResolution] = (word >>> (i % Long.SIZE) & 1L) != 0;
+        }
+        return new Glyph(bitmap);
+    }
+}
@@ -1,19 +1,29 @@
 package image_char_matching;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Matches characters to sub-images based on their brightness levels.
  * This class maintains a mapping from characters to their perceived brightness
  * and provides functionality to find the closest character match for a given brightness level.
+ * The normalized brightness levels are kept in a sorted array that is rebuilt only when the
+ * character set changes, so each lookup is a binary search.
+ * Characters can also be matched by shape, comparing a tile's black&white pattern with the glyph
+ * images packed into longs, by the number of differing bits.
  */
 public class SubImgCharMatcher {
 
     private HashMap<Character, Integer> charBrightnessMap = new HashMap<>();
-    private char maxBrightnessChar;
-    private char minBrightnessChar;
     private int maxBrightness = Integer.MIN_VALUE;
     private int minBrightness = Integer.MAX_VALUE;
+    // Distinct normalized brightness levels in ascending order, and the lowest char of each level
+    private double[] sortedBrightnesses = new double[0];
+    private char[] sortedChars = new char[0];
+    // Every char in ascending order, and its glyph image packed into longs
+    private char[] shapeChars = new char[0];
+    private long[][] shapeBitmaps = new long[0][];
 
     /**
      * Constructs a SubImgCharMatcher with a predefined set of characters.
@@ -23,25 +33,69 @@ public class SubImgCharMatcher {
      */
     public SubImgCharMatcher(char[] charset) {
         for (char c : charset) {
-            addChar(c);
+            charBrightnessMap.put(c, calculateCharBrightness(c));
         }
+        rebuildLookup();
     }
 
     /**
      * Finds the character that best matches the specified target brightness.
+     * When two characters are equally close, the lower one is returned.
      *
      * @param targetBrightness The target brightness to match against.
      * @return The character that closest matches the target brightness.
      */
     public char getCharByImageBrightness(double targetBrightness) {
+        double[] brightnesses = sortedBrightnesses;
+        char[] chars = sortedChars;
+        int index = Arrays.binarySearch(brightnesses, targetBrightness);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        // Distance only grows moving away from the insertion point, so walk outwards
+        // while a level is at least as close as the best one found so far
         char closestChar = 0;
         double minDiff = Double.MAX_VALUE;
-        for (Map.Entry<Character, Integer> entry : charBrightnessMap.entrySet()) {
-            double normalizedBrightness = normalizeBrightness(entry.getValue());
-            double diff = Math.abs(normalizedBrightness - targetBrightness);
-            if (diff < minDiff || (diff == minDiff && entry.getKey() < closestChar)) {
+        for (int i = index - 1; i >= 0; i--) {
+            double diff = Math.abs(brightnesses[i] - targetBrightness);
+            if (!(diff <= minDiff)) break;
+            if (diff < minDiff || chars[i] < closestChar) {
+                minDiff = diff;
+                closestChar = chars[i];
+            }
+        }
+        for (int i = index; i < brightnesses.length; i++) {
+            double diff = Math.abs(brightnesses[i] - targetBrightness);
+            if (!(diff <= minDiff)) break;
+            if (diff < minDiff || chars[i] < closestChar) {
                 minDiff = diff;
-                closestChar = entry.getKey();
+                closestChar = chars[i];
+            }
+        }
+        return closestChar;
+    }
+
+    /**
+     * Finds the character whose glyph image best matches a black&white pattern, as the one with
+     * the fewest differing pixels. When several characters are equally close, the lowest is returned.
+     *
+     * @param tileShape The pattern, packed like {@link CharConverter#getPackedBitmap(char)}.
+     * @return The character whose shape best matches the pattern.
+     */
+    public char getCharByImageShape(long[] tileShape) {
+        char[] chars = shapeChars;
+        long[][] bitmaps = shapeBitmaps;
+        char closestChar = 0;
+        int minDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < chars.length; i++) {
+            long[] bitmap = bitmaps[i];
+            int distance = 0;
+            for (int word = 0; word < bitmap.length; word++) {
+                distance += Long.bitCount(bitmap[word] ^ tileShape[word]);
+            }
+            if (distance < minDistance) {
+                minDistance = distance;
+                closestChar = chars[i];
             }
         }
         return closestChar;
@@ -55,7 +109,7 @@ public class SubImgCharMatcher {
     public void addChar(char c) {
         int brightness = calculateCharBrightness(c);
         charBrightnessMap.put(c, brightness);
-        updateMaxMinChars(c, brightness);
+        rebuildLookup();
     }
 
     /**
@@ -66,23 +120,12 @@ public class SubImgCharMatcher {
     public void removeChar(char c) {
         if (charBrightnessMap.keySet().isEmpty() || !charBrightnessMap.containsKey(c)) return;
         charBrightnessMap.remove(c);
-        if (c == maxBrightnessChar || c == minBrightnessChar) {
-            updateMaxMinBrightnessAfterRemoval();
-        }
+        rebuildLookup();
     }
 
     // Calculates the brightness of a character based on its representation.
     private int calculateCharBrightness(char c) {
-        int brightness = 0;
-        boolean[][] charArray = CharConverter.convertToBoolArray(c);
-        for (int y = 0; y < CharConverter.DEFAULT_PIXEL_RESOLUTION; y++) {
-            for (int x = 0; x < CharConverter.DEFAULT_PIXEL_RESOLUTION; x++) {
-                if (charArray[y][x]) {
-                    brightness++;
-                }
-            }
-        }
-        return brightness;
+        return CharConverter.getPixelCount(c);
     }
 
     // Normalizes a brightness value to a 0-1 scale.
@@ -91,32 +134,36 @@ public class SubImgCharMatcher {
         return (double) (brightness - minBrightness) / (maxBrightness - minBrightness);
     }
 
-    // Updates the maximum and minimum brightness characters.
-    private void updateMaxMinChars(char c, int brightness) {
-        if (brightness > maxBrightness) {
-            maxBrightness = brightness;
-            maxBrightnessChar = c;
+    // Recalculates the brightness range and the lookup arrays after the set has changed.
+    private void rebuildLookup() {
+        TreeMap<Integer, Character> levels = new TreeMap<>();
+        for (Map.Entry<Character, Integer> entry : charBrightnessMap.entrySet()) {
+            levels.merge(entry.getValue(), entry.getKey(), (a, b) -> a < b ? a : b);
         }
-        if (brightness < minBrightness) {
-            minBrightness = brightness;
-            minBrightnessChar = c;
+        maxBrightness = levels.isEmpty() ? Integer.MIN_VALUE : levels.lastKey();
+        minBrightness = levels.isEmpty() ? Integer.MAX_VALUE : levels.firstKey();
+        double[] brightnesses = new double[levels.size()];
+        char[] chars = new char[levels.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Character> level : levels.entrySet()) {
+            brightnesses[i] = normalizeBrightness(level.getKey());
+            chars[i] = level.getValue();
+            i++;
         }
-    }
+        sortedBrightnesses = brightnesses;
+        sortedChars = chars;
 
-    // Recalculates the maximum and minimum brightness values after a character is removed.
-    private void updateMaxMinBrightnessAfterRemoval() {
-        maxBrightness = Integer.MIN_VALUE;
-        minBrightness = Integer.MAX_VALUE;
-        for (Map.Entry<Character, Integer> entry : charBrightnessMap.entrySet()) {
-            int currentBrightness = entry.getValue();
-            if (currentBrightness > maxBrightness) {
-                maxBrightness = currentBrightness;
-                maxBrightnessChar = entry.getKey();
-            }
-            if (currentBrightness < minBrightness) {
-                minBrightness = currentBrightness;
-                minBrightnessChar = entry.getKey();
-            }
+        char[] allChars = new char[charBrightnessMap.size()];
+        i = 0;
+        for (char c : charBrightnessMap.keySet()) {
+            allChars[i++] = c;
+        }
+        Arrays.sort(allChars);
+        long[][] bitmaps = new long[allChars.length][];
+        for (i = 0; i < allChars.length; i++) {
+            bitmaps[i] = CharConverter.getPackedBitmap(allChars[i]);
         }
+        shapeChars = allChars;
+        shapeBitmaps = bitmaps;
     }
 }